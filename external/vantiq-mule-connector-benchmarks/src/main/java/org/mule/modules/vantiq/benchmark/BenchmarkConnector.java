@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.benchmark;
+
+import org.mule.api.ConnectionException;
+import org.mule.modules.vantiq.VantiqConnectionManagement;
+import org.mule.modules.vantiq.VantiqConnector;
+import org.mule.modules.vantiq.dispatch.OverflowPolicy;
+
+/**
+ * Creates connectors for the benchmarks.  Outside of Mule the configuration
+ * defaults are not applied, so the connection is configured here with the
+ * same defaults as the connector configuration.
+ *
+ * @author Vantiq
+ */
+public class BenchmarkConnector {
+
+    /**
+     * Creates a connection management with the default configuration for
+     * the given server.  The connection uses an access token, so connecting
+     * does not authenticate.
+     *
+     * @param server The server URL
+     * @return The unconnected connection management
+     */
+    public static VantiqConnectionManagement configure(String server) {
+        VantiqConnectionManagement config = new VantiqConnectionManagement();
+        // These values mirror the @Default annotations of VantiqConnectionManagement
+        // and must be kept in sync with them
+        config.setServer(server);
+        config.setTopic("/system/connector/MuleSoft/inbound");
+        config.setAuthToken("benchmark-token");
+        config.setMaxBatchSize(500);
+        config.setMaxBatchLinger(20);
+        config.setMaxBatchBytes(1048576);
+        config.setMaxInFlightBatches(4);
+        config.setDispatchWorkers(1);
+        config.setDispatchOverflow(OverflowPolicy.BLOCK);
+        config.setResubscribeInitialBackoff(1000);
+        config.setResubscribeMaxBackoff(60000);
+        config.setMetadataCacheTtl(300000);
+        config.setMetadataCacheSize(1000);
+        config.setPrewarmConcurrency(4);
+        config.setTokenRefreshMargin(60000);
+        config.setMaxIdleConnections(5);
+        config.setKeepAliveDuration(300000);
+        config.setJmxMetrics(true);
+        config.setBulkWorkerThreads(16);
+        return config;
+    }
+
+    /**
+     * Connects the given configuration and returns a connector using it
+     *
+     * @param config The connection management
+     * @return The connected connector
+     * @throws ConnectionException If the connection fails
+     */
+    public static VantiqConnector connect(VantiqConnectionManagement config) throws ConnectionException {
+        config.connect("benchmark", null);
+        VantiqConnector connector = new VantiqConnector();
+        connector.setConnectionManagement(config);
+        return connector;
+    }
+}
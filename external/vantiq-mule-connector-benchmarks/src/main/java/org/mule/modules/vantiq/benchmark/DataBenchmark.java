@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.vantiq.VantiqConnectionManagement;
+import org.mule.modules.vantiq.VantiqConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures inserting a record and polling a data type with selectData.
+ *
+ * @author Vantiq
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataBenchmark {
+
+    /**
+     * The number of records returned by each select
+     */
+    @Param({"1", "100", "1000"})
+    public int selectSize;
+
+    private MockVantiqServer server;
+    private VantiqConnectionManagement config;
+    private VantiqConnector connector;
+    private Map<String,Object> record;
+    private LatchCallback callback;
+
+    @Setup
+    public void setup() throws Exception {
+        this.server = new MockVantiqServer();
+        this.server.setSelectSize(this.selectSize);
+        this.server.start();
+
+        this.config = BenchmarkConnector.configure(this.server.getUrl());
+        this.connector = BenchmarkConnector.connect(this.config);
+        this.record = Records.record(0);
+        this.callback = new LatchCallback();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.config.disconnect();
+        this.server.shutdown();
+    }
+
+    @Benchmark
+    public void insertData() throws Exception {
+        this.connector.insertData(Records.TYPE, this.record);
+    }
+
+    @Benchmark
+    public void selectData() throws Exception {
+        // The select completes asynchronously, delivering all records in one message
+        this.callback.expect(1);
+        this.connector.selectData(Records.TYPE, null, null, this.callback);
+        this.callback.await();
+    }
+}
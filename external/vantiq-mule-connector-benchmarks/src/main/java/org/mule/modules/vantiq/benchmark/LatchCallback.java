@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.api.MuleEvent;
+import org.mule.api.callback.SourceCallback;
+
+/**
+ * A source callback that counts down a latch for each message, so that a
+ * benchmark can wait for a known number of messages to reach the flow.
+ *
+ * @author Vantiq
+ */
+public class LatchCallback implements SourceCallback {
+
+    private volatile CountDownLatch latch = new CountDownLatch(0);
+
+    /**
+     * Starts waiting for the given number of messages
+     *
+     * @param count The number of messages
+     */
+    public void expect(int count) {
+        this.latch = new CountDownLatch(count);
+    }
+
+    /**
+     * Waits for the expected messages
+     *
+     * @throws InterruptedException If interrupted while waiting
+     * @throws IllegalStateException If the messages do not arrive within 30 seconds
+     */
+    public void await() throws InterruptedException {
+        if(!this.latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(this.latch.getCount() + " messages not received");
+        }
+    }
+
+    @Override
+    public Object process() throws Exception {
+        return process(null);
+    }
+
+    @Override
+    public Object process(Object payload) throws Exception {
+        this.latch.countDown();
+        return payload;
+    }
+
+    @Override
+    public Object process(Object payload, Map<String,Object> properties) throws Exception {
+        return process(payload);
+    }
+
+    @Override
+    public MuleEvent processEvent(MuleEvent event) {
+        this.latch.countDown();
+        return event;
+    }
+}
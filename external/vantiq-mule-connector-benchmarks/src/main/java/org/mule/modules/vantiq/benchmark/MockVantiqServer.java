@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * An embedded stand-in for a Vantiq server, answering the REST and WebSocket
+ * requests made by the connector with canned responses:
+ * <ul>
+ *   <li>GET requests (selects) return a fixed page of records</li>
+ *   <li>POST requests (publishes, inserts and upserts) succeed with an empty object</li>
+ *   <li>WebSocket requests are acknowledged, and subscriptions receive the
+ *       events pushed by {@link #pushEvents(int)}</li>
+ * </ul>
+ *
+ * @author Vantiq
+ */
+public class MockVantiqServer {
+
+    private static final Gson gson = new Gson();
+
+    private final MockWebServer server = new MockWebServer();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private volatile String selectBody = "[]";
+
+    /**
+     * Starts the server on a free local port
+     *
+     * @throws IOException If the server cannot be started
+     */
+    public void start() throws IOException {
+        this.server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // The mock server records every request, so discard them to keep the heap flat
+                while(server.takeRequest(0, TimeUnit.NANOSECONDS) != null) {
+                    // Discard
+                }
+
+                String path = request.getPath();
+                if(path.contains("/wsock/")) {
+                    return new MockResponse().withWebSocketUpgrade(new Listener());
+                } else if(path.startsWith("/authenticate")) {
+                    return json("{\"accessToken\":\"benchmark-token\"}");
+                } else if("GET".equals(request.getMethod())) {
+                    return json(selectBody);
+                }
+                return json("{}");
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * Returns the URL of the server
+     *
+     * @return The server URL
+     */
+    public String getUrl() {
+        String url = this.server.url("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    /**
+     * Sets the number of records returned by each select
+     *
+     * @param count The number of records
+     */
+    public void setSelectSize(int count) {
+        JsonArray records = new JsonArray();
+        for(int i = 0; i < count; i++) {
+            records.add(gson.toJsonTree(Records.record(i)));
+        }
+        this.selectBody = gson.toJson(records);
+    }
+
+    /**
+     * Returns the number of active subscriptions
+     *
+     * @return The subscription count
+     */
+    public int getSubscriptionCount() {
+        return this.subscribers.size();
+    }
+
+    /**
+     * Sends the given number of events to every subscription
+     *
+     * @param count The number of events
+     */
+    public void pushEvents(int count) {
+        for(Subscriber subscriber : this.subscribers) {
+            for(int i = 0; i < count; i++) {
+                subscriber.socket.send(subscriber.event(i));
+            }
+        }
+    }
+
+    /**
+     * Stops the server
+     *
+     * @throws IOException If the server fails to stop
+     */
+    public void shutdown() throws IOException {
+        this.server.shutdown();
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    /**
+     * Answers the messages sent by the SDK on the WebSocket.  Each request carries
+     * a request id that is echoed in the X-Request-Id header of the response, and
+     * the events of a subscription carry the id of its subscribe request.
+     */
+    private class Listener extends WebSocketListener {
+
+        private final List<Subscriber> own = new ArrayList<Subscriber>();
+
+        @Override
+        public void onMessage(WebSocket socket, String text) {
+            JsonObject request = gson.fromJson(text, JsonObject.class);
+            String requestId = requestId(request);
+
+            JsonObject response = new JsonObject();
+            response.addProperty("status", 200);
+            response.add("headers", headers(requestId));
+            response.add("body", new JsonObject());
+            socket.send(gson.toJson(response));
+
+            JsonElement op = request.get("op");
+            if(op != null && "subscribe".equals(op.getAsString())) {
+                JsonElement resourceId = request.get("resourceId");
+                Subscriber subscriber = new Subscriber(socket, requestId, (resourceId != null) ? resourceId.getAsString() : "");
+                synchronized(this.own) {
+                    this.own.add(subscriber);
+                }
+                subscribers.add(subscriber);
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket socket, int code, String reason) {
+            socket.close(code, reason);
+            onClosed(socket, code, reason);
+        }
+
+        @Override
+        public void onClosed(WebSocket socket, int code, String reason) {
+            synchronized(this.own) {
+                subscribers.removeAll(this.own);
+                this.own.clear();
+            }
+        }
+
+        private String requestId(JsonObject request) {
+            JsonElement parameters = request.get("parameters");
+            if(parameters != null && parameters.isJsonObject() && parameters.getAsJsonObject().has("requestId")) {
+                return parameters.getAsJsonObject().get("requestId").getAsString();
+            }
+            JsonElement requestId = request.get("requestId");
+            return (requestId != null) ? requestId.getAsString() : "";
+        }
+    }
+
+    private static JsonObject headers(String requestId) {
+        JsonObject headers = new JsonObject();
+        headers.addProperty("X-Request-Id", requestId);
+        return headers;
+    }
+
+    /**
+     * A subscription on a WebSocket
+     */
+    private static class Subscriber {
+
+        private final WebSocket socket;
+        private final String requestId;
+        private final String path;
+
+        Subscriber(WebSocket socket, String requestId, String path) {
+            this.socket = socket;
+            this.requestId = requestId;
+            this.path = path;
+        }
+
+        String event(int index) {
+            JsonObject body = new JsonObject();
+            body.addProperty("path", this.path);
+            body.add("value", gson.toJsonTree(Records.record(index)));
+
+            // Streamed messages use status 100, as for Vantiq events
+            JsonObject event = new JsonObject();
+            event.addProperty("status", 100);
+            event.addProperty("contentType", "application/json");
+            event.add("headers", headers(this.requestId));
+            event.add("body", body);
+            return gson.toJson(event);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the records used as payloads by the benchmarks
+ *
+ * @author Vantiq
+ */
+public class Records {
+
+    /**
+     * The data type of the benchmark records
+     */
+    public static final String TYPE = "BenchmarkType";
+
+    /**
+     * Returns a record with a mix of property types
+     *
+     * @param index The index of the record
+     * @return The record
+     */
+    public static Map<String,Object> record(int index) {
+        Map<String,Object> record = new LinkedHashMap<String,Object>();
+        record.put("id", "record-" + index);
+        record.put("name", "Benchmark record number " + index);
+        record.put("count", index);
+        record.put("value", index * 1.5);
+        record.put("active", index % 2 == 0);
+        record.put("timestamp", "2016-01-01T00:00:00.000Z");
+        return record;
+    }
+
+    /**
+     * Returns a list of records
+     *
+     * @param count The number of records
+     * @return The records
+     */
+    public static List<Map<String,Object>> records(int count) {
+        List<Map<String,Object>> records = new ArrayList<Map<String,Object>>(count);
+        for(int i = 0; i < count; i++) {
+            records.add(record(i));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mule.api.callback.StopSourceCallback;
+import org.mule.modules.vantiq.VantiqConnectionManagement;
+import org.mule.modules.vantiq.VantiqConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rate at which subscription events pushed by the server reach
+ * the flow, with events delivered on the WebSocket thread or through the
+ * dispatch queue.
+ *
+ * @author Vantiq
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SubscriptionBenchmark {
+
+    private static final int EVENTS = 1000;
+
+    /**
+     * The size of the dispatch queue, 0 delivers events on the WebSocket thread
+     */
+    @Param({"0", "4096"})
+    public int dispatchQueueSize;
+
+    private MockVantiqServer server;
+    private VantiqConnectionManagement config;
+    private LatchCallback callback;
+    private StopSourceCallback subscription;
+
+    @Setup
+    public void setup() throws Exception {
+        this.server = new MockVantiqServer();
+        this.server.start();
+
+        this.config = BenchmarkConnector.configure(this.server.getUrl());
+        this.config.setDispatchQueueSize(this.dispatchQueueSize);
+        this.config.setDispatchWorkers(2);
+        VantiqConnector connector = BenchmarkConnector.connect(this.config);
+
+        this.callback = new LatchCallback();
+        this.subscription = connector.subscribeTopic("/benchmark/events", this.callback);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while(this.server.getSubscriptionCount() == 0) {
+            if(System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Subscription was not created");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.subscription.stop();
+        this.config.disconnect();
+        this.server.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void subscribeTopic() throws Exception {
+        this.callback.expect(EVENTS);
+        this.server.pushEvents(EVENTS);
+        this.callback.await();
+    }
+}
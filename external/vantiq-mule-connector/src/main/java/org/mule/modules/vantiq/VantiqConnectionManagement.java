@@ -21,6 +21,17 @@
  */
 package org.mule.modules.vantiq;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.mule.api.ConnectionException;
 import org.mule.api.ConnectionExceptionCode;
 import org.mule.api.annotations.Configurable;
@@ -33,17 +44,35 @@ import org.mule.api.annotations.components.ConnectionManagement;
 import org.mule.api.annotations.display.Password;
 import org.mule.api.annotations.param.ConnectionKey;
 import org.mule.api.annotations.param.Default;
+import org.mule.api.annotations.param.Optional;
+import org.mule.api.callback.SourceCallback;
+import org.mule.modules.vantiq.auth.TokenManager;
+import org.mule.modules.vantiq.dispatch.EventDispatcher;
+import org.mule.modules.vantiq.dispatch.OverflowPolicy;
+import org.mule.modules.vantiq.http.HttpClientPool;
+import org.mule.modules.vantiq.metadata.RecordValidator;
+import org.mule.modules.vantiq.metadata.TypeMetadataCache;
+import org.mule.modules.vantiq.metrics.ConnectorMetrics;
+import org.mule.modules.vantiq.publish.PayloadBody;
+import org.mule.modules.vantiq.publish.PublishBatcher;
+import org.mule.modules.vantiq.publish.SdkTopicPublisher;
+import org.mule.modules.vantiq.publish.StreamingTopicPublisher;
+import org.mule.modules.vantiq.publish.TopicPublisher;
+import org.mule.modules.vantiq.subscription.SubscriptionRegistry;
+import org.mule.modules.vantiq.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.vantiq.client.Vantiq;
 import io.vantiq.client.VantiqResponse;
+import okhttp3.OkHttpClient;
 
 /**
  * Provides the connectivity to a Vantiq system using the 
  * <a href="https://github.com/Vantiq/vantiq-sdk-java">Vantiq Java SDK</a>.
  * 
- * Basic (i.e. username/password) authentication is used to connect to Vantiq.
+ * Basic (i.e. username/password) authentication is used to connect to Vantiq,
+ * unless an access token is configured.
  * 
  * @author Vantiq
  */
@@ -54,6 +83,28 @@ public class VantiqConnectionManagement {
 
     private Vantiq vantiq;
     
+    private HttpClientPool.Lease httpPool;
+    
+    private TokenManager tokenManager;
+    
+    private ConnectorMetrics metrics;
+    
+    private TopicPublisher topicPublisher;
+    
+    private StreamingTopicPublisher streamingPublisher;
+    
+    private PublishBatcher publishBatcher;
+    
+    private ExecutorService bulkWorkers;
+    
+    private final List<EventDispatcher> dispatchers = new ArrayList<EventDispatcher>();
+    
+    private File privateSpillDirectory;
+    
+    private SubscriptionRegistry subscriptionRegistry;
+    
+    private TypeMetadataCache metadataCache;
+    
     /**
      * The server URL of the Vantiq server.  The Vantiq cloud servers are: 
      * <ul>
@@ -97,13 +148,256 @@ public class VantiqConnectionManagement {
     @Default("0")
     private long connectTimeout;
     
+    /**
+     * An access token (e.g. a Vantiq long-lived token) used instead of the
+     * password.  When set, connecting does not authenticate with Vantiq and
+     * the password is ignored.
+     */
+    @Configurable
+    @Optional
+    @Password
+    private String authToken;
+    
+    /**
+     * Renews the access token after this many milliseconds.  0 only renews
+     * the token shortly before it expires, which requires a JWT token with
+     * an expiry.  Opaque tokens are only renewed if an interval is set.
+     * Tokens set by authToken cannot be renewed.
+     */
+    @Configurable
+    @Default("0")
+    private long tokenRefreshInterval;
+    
+    /**
+     * The time in milliseconds before the access token expires at which
+     * it is renewed.
+     */
+    @Configurable
+    @Default("60000")
+    private long tokenRefreshMargin;
+    
+    /**
+     * Shares the HTTP connection pool and request limit with all other
+     * configurations that use the same server.
+     */
+    @Configurable
+    @Default("false")
+    private boolean sharedConnectionPool;
+    
+    /**
+     * The maximum number of idle keep-alive connections kept to the server.
+     */
+    @Configurable
+    @Default("5")
+    private int maxIdleConnections;
+    
+    /**
+     * The time in milliseconds an idle connection is kept open for reuse.
+     */
+    @Configurable
+    @Default("300000")
+    private long keepAliveDuration;
+    
+    /**
+     * The maximum number of concurrent requests to the server.  0 means
+     * no limit.
+     */
+    @Configurable
+    @Default("0")
+    private int maxRequestsPerHost;
+    
+    /**
+     * Registers the connector metrics (latencies, throughput, errors, bytes
+     * and event rates) as MBeans in the platform MBean server.
+     */
+    @Configurable
+    @Default("true")
+    private boolean jmxMetrics;
+    
+    /**
+     * Enables batching of data publishes.  When enabled, concurrent publishes
+     * to the same topic and data type are merged into a single Vantiq publish
+     * message that is sent on a background pipeline.
+     */
+    @Configurable
+    @Default("false")
+    private boolean batchPublish;
+    
+    /**
+     * The maximum number of records sent in a single batched publish.
+     */
+    @Configurable
+    @Default("500")
+    private int maxBatchSize;
+    
+    /**
+     * The maximum time in milliseconds that a record waits for a batch
+     * to fill before the batch is sent.
+     */
+    @Configurable
+    @Default("20")
+    private long maxBatchLinger;
+    
+    /**
+     * The maximum estimated size in bytes of a single batched publish.
+     * A value of 0 means no limit.
+     */
+    @Configurable
+    @Default("1048576")
+    private long maxBatchBytes;
+    
+    /**
+     * The maximum number of batched publish requests that may be in 
+     * flight at the same time.
+     */
+    @Configurable
+    @Default("4")
+    private int maxInFlightBatches;
+    
+    /**
+     * The number of subscription events that may be queued for each
+     * subscription source.  A value of 0 delivers events to the flow
+     * directly on the WebSocket thread.
+     */
+    @Configurable
+    @Default("0")
+    private int dispatchQueueSize;
+    
+    /**
+     * The number of workers delivering queued subscription events to
+     * the flow for each subscription source.
+     */
+    @Configurable
+    @Default("1")
+    private int dispatchWorkers;
+    
+    /**
+     * What to do with a subscription event when the dispatch queue is 
+     * full: BLOCK, DROP_OLDEST or SPILL to disk.
+     */
+    @Configurable
+    @Default("BLOCK")
+    private OverflowPolicy dispatchOverflow;
+    
+    /**
+     * The directory holding spilled subscription events.  Defaults to a
+     * directory created for the connection in the system temporary directory
+     * that only the current user can access.
+     */
+    @Configurable
+    @Optional
+    private String dispatchSpillDirectory;
+    
+    /**
+     * The dotted path of the property in a subscription event used to
+     * keep events in order when several workers are used (e.g. "value.id").
+     * Events with the same key are delivered in the order received.
+     */
+    @Configurable
+    @Optional
+    private String dispatchOrderingKey;
+    
+    /**
+     * The delay in milliseconds before the first attempt to resubscribe
+     * after the subscription connection to Vantiq drops.  Later attempts
+     * back off exponentially, with random jitter.
+     */
+    @Configurable
+    @Default("1000")
+    private long resubscribeInitialBackoff;
+    
+    /**
+     * The maximum delay in milliseconds between attempts to resubscribe
+     * after the subscription connection to Vantiq drops.
+     */
+    @Configurable
+    @Default("60000")
+    private long resubscribeMaxBackoff;
+    
+    /**
+     * The time in milliseconds that Vantiq data type schemas are cached
+     * before being reloaded.  A value of 0 means the schemas do not expire.
+     */
+    @Configurable
+    @Default("300000")
+    private long metadataCacheTtl;
+    
+    /**
+     * The maximum number of Vantiq data type schemas held in the cache.
+     * The least recently used schemas are evicted first.
+     */
+    @Configurable
+    @Default("1000")
+    private int metadataCacheSize;
+    
+    /**
+     * Loads the schemas of all Vantiq data types in the background when
+     * connecting.
+     */
+    @Configurable
+    @Default("false")
+    private boolean prewarmMetadata;
+    
+    /**
+     * The maximum number of concurrent requests used to prewarm the
+     * data type schemas.
+     */
+    @Configurable
+    @Default("4")
+    private int prewarmConcurrency;
+    
+    /**
+     * Subscribes to changes of the Vantiq data type definitions, so that
+     * cached schemas are evicted as soon as they are changed.
+     */
+    @Configurable
+    @Default("true")
+    private boolean metadataChangeSubscription;
+    
+    /**
+     * Checks and normalizes the records sent by publishData, insertData,
+     * insertBatch and upsertBatch against the schema of their Vantiq data
+     * type before they are sent.  Invalid records are rejected without
+     * a request to Vantiq.
+     */
+    @Configurable
+    @Default("false")
+    private boolean validatePayloads;
+    
+    /**
+     * Publishes by streaming the JSON of the payload directly into the request
+     * rather than converting it to a string first through the Vantiq SDK.
+     * Payloads that are already serialized (byte[] or InputStream) are always
+     * sent as-is.
+     */
+    @Configurable
+    @Default("false")
+    private boolean streamingPublish;
+    
+    /**
+     * Compresses the body of streamed publish requests with gzip.
+     */
+    @Configurable
+    @Default("false")
+    private boolean compressPublish;
+    
+    /**
+     * The maximum number of threads sending the chunks of insertBatch and
+     * upsertBatch, shared by all bulk writes of the connection.  Chunks
+     * beyond this limit wait for a free thread.
+     */
+    @Configurable
+    @Default("16")
+    private int bulkWorkerThreads;
+    
     //--------------------------------------------------------------------------
     // Connection Management Methods
     //--------------------------------------------------------------------------    
     
     /**
      * Connects to Vantiq using the provided credentials and the configured
-     * server URL.
+     * server URL.  If an access token is configured, it is used without
+     * authenticating and the password is not required.
      * 
      * If HTTP 401 is returned, then an INCORRECT_CREDENTIALS exception is thrown.
      * If HTTP 404 is returned, then an UNKNOWN_HOST exception is thrown.
@@ -115,19 +409,122 @@ public class VantiqConnectionManagement {
      */
     @Connect
     @TestConnectivity
-    public void connect(@ConnectionKey String username, @Password String password) throws ConnectionException {
+    public void connect(@ConnectionKey String username, @Optional @Password String password) throws ConnectionException {
+        if(this.authToken == null && password == null) {
+            throw new ConnectionException(ConnectionExceptionCode.INCORRECT_CREDENTIALS, null, "Password or access token required");
+        }
+        
+        boolean connected = false;
+        try {
+            open(username, password);
+            connected = true;
+        } finally {
+            if(!connected) {
+                // Release whatever was opened before the failure
+                disconnect();
+            }
+        }
+    }
+    
+    /**
+     * Authenticates and creates the resources of the connection
+     * 
+     * @param username The username on the Vantiq server
+     * @param password The password on the Vantiq server
+     * @throws ConnectionException If the authentication fails
+     */
+    private void open(String username, String password) throws ConnectionException {
+        this.httpPool = HttpClientPool.acquire(this.server, 
+                                               this.sharedConnectionPool, 
+                                               this.maxIdleConnections, 
+                                               this.keepAliveDuration, 
+                                               this.maxRequestsPerHost);
+        this.metrics = ConnectorMetrics.acquire(this.server, username, this.jmxMetrics);
         this.vantiq = new Vantiq(this.server);
         this.vantiq.setReadTimeout(this.readTimeout);
         this.vantiq.setWriteTimeout(this.writeTimeout);
         this.vantiq.setConnectTimeout(this.connectTimeout);
-        checkAuthenticateResponse(this.vantiq.authenticate(username, password));
-        log.info("User '" + username + "' authenticated.");
+        log.info("Vantiq SDK requests use the SDK's own HTTP client, so only streamed publishes use the " +
+                 "configured connection pool and are included in the HTTP metrics");
+        
+        if(this.authToken != null) {
+            this.vantiq.setAccessToken(this.authToken);
+            log.info("User '" + username + "' connected with access token.");
+        } else {
+            checkAuthenticateResponse(this.vantiq.authenticate(username, password));
+            log.info("User '" + username + "' authenticated.");
+        }
+        this.tokenManager = new TokenManager(this.vantiq, 
+                                             username, 
+                                             (this.authToken != null) ? null : password, 
+                                             this.tokenRefreshInterval, 
+                                             this.tokenRefreshMargin);
+        this.tokenManager.start();
+        
+        this.subscriptionRegistry = new SubscriptionRegistry(this.vantiq, 
+                                                             this.metrics, 
+                                                             this.resubscribeInitialBackoff, 
+                                                             this.resubscribeMaxBackoff);
+        this.metadataCache = new TypeMetadataCache(this.vantiq, 
+                                                   this.subscriptionRegistry, 
+                                                   this.metadataCacheTtl, 
+                                                   this.metadataCacheSize, 
+                                                   this.metadataChangeSubscription);
+        if(this.prewarmMetadata) {
+            this.metadataCache.prewarm(this.prewarmConcurrency);
+        }
+        
+        // An InputStream payload can only be written once, so failed publishes are not retried
+        OkHttpClient httpClient = this.httpPool.configure(new OkHttpClient.Builder(), this.metrics.getHttp().getInterceptor())
+            .readTimeout(this.readTimeout, TimeUnit.MILLISECONDS)
+            .writeTimeout(this.writeTimeout, TimeUnit.MILLISECONDS)
+            .connectTimeout(this.connectTimeout, TimeUnit.MILLISECONDS)
+            .retryOnConnectionFailure(false)
+            .build();
+        this.streamingPublisher = new StreamingTopicPublisher(this.vantiq, httpClient, this.compressPublish);
+        if(this.streamingPublish) {
+            this.topicPublisher = this.streamingPublisher;
+        } else {
+            this.topicPublisher = new SdkTopicPublisher(this.vantiq);
+        }
+        
+        // Threads are shared by all bulk writes, each write also bounding its own concurrency
+        int bulkThreads = Math.max(1, this.bulkWorkerThreads);
+        ThreadPoolExecutor bulkPool = new ThreadPoolExecutor(bulkThreads, bulkThreads, 
+                                                             60, TimeUnit.SECONDS, 
+                                                             new LinkedBlockingQueue<Runnable>(), 
+                                                             new NamedThreadFactory("vantiq-bulk-writer"));
+        bulkPool.allowCoreThreadTimeOut(true);
+        this.bulkWorkers = bulkPool;
+        
+        if(this.batchPublish) {
+            this.publishBatcher = new PublishBatcher(this.topicPublisher, 
+                                                     this.maxBatchSize, 
+                                                     this.maxBatchLinger, 
+                                                     this.maxBatchBytes, 
+                                                     this.maxInFlightBatches);
+        }
         
         StringBuilder sb = new StringBuilder();
         sb.append("Vantiq timeout settings:\n");
         sb.append("  Read Timeout:    ").append(this.readTimeout).append(" ms\n");
         sb.append("  Write Timeout:   ").append(this.writeTimeout).append(" ms\n");
         sb.append("  Connect Timeout: ").append(this.connectTimeout).append(" ms\n");
+        sb.append("Vantiq HTTP settings:\n");
+        sb.append("  Shared Pool:     ").append(this.sharedConnectionPool).append("\n");
+        sb.append("  Max Idle:        ").append(this.maxIdleConnections).append(" connections\n");
+        sb.append("  Keep Alive:      ").append(this.keepAliveDuration).append(" ms\n");
+        sb.append("  Max Requests:    ").append(this.maxRequestsPerHost).append("\n");
+        if(this.batchPublish) {
+            sb.append("Vantiq batch publish settings:\n");
+            sb.append("  Max Batch Size:  ").append(this.maxBatchSize).append(" records\n");
+            sb.append("  Max Linger:      ").append(this.maxBatchLinger).append(" ms\n");
+            sb.append("  Max Batch Bytes: ").append(this.maxBatchBytes).append(" bytes\n");
+            sb.append("  Max In Flight:   ").append(this.maxInFlightBatches).append("\n");
+        }
+        sb.append("Vantiq publish settings:\n");
+        sb.append("  Streaming:       ").append(this.streamingPublish).append("\n");
+        sb.append("  Compress:        ").append(this.compressPublish).append("\n");
         log.debug(sb.toString());
     }
     
@@ -149,11 +546,51 @@ public class VantiqConnectionManagement {
     }
     
     /**
-     * Disconnects from Vantiq, closing down all active subscriptions.
+     * Disconnects from Vantiq, closing down all active subscriptions and
+     * their dispatchers and sending any pending batched publishes.
      */
     @Disconnect
     public void disconnect() {
-        this.vantiq.unsubscribeAll();
+        synchronized(this.dispatchers) {
+            for(EventDispatcher dispatcher : this.dispatchers) {
+                dispatcher.close();
+            }
+            this.dispatchers.clear();
+            if(this.privateSpillDirectory != null) {
+                this.privateSpillDirectory.delete();
+                this.privateSpillDirectory = null;
+            }
+        }
+        if(this.publishBatcher != null) {
+            this.publishBatcher.close();
+            this.publishBatcher = null;
+        }
+        if(this.bulkWorkers != null) {
+            this.bulkWorkers.shutdown();
+            this.bulkWorkers = null;
+        }
+        this.topicPublisher = null;
+        this.streamingPublisher = null;
+        if(this.metadataCache != null) {
+            this.metadataCache.close();
+            this.metadataCache = null;
+        }
+        if(this.subscriptionRegistry != null) {
+            this.subscriptionRegistry.close();
+            this.subscriptionRegistry = null;
+        }
+        if(this.tokenManager != null) {
+            this.tokenManager.close();
+            this.tokenManager = null;
+        }
+        if(this.httpPool != null) {
+            this.httpPool.release();
+            this.httpPool = null;
+        }
+        if(this.metrics != null) {
+            this.metrics.release();
+            this.metrics = null;
+        }
         this.vantiq = null;
     }
     
@@ -169,13 +606,14 @@ public class VantiqConnectionManagement {
     }
 
     /**
-     * Returns if the connection is connected and authenticated.
+     * Returns if the connection is connected and authenticated, and the
+     * access token has not expired.
      * 
      * @return true if the connection is valid and the authentication is valid.
      */
     @ValidateConnection
     public boolean validateConnection() {
-        return this.vantiq != null && this.vantiq.isAuthenticated();
+        return this.vantiq != null && this.vantiq.isAuthenticated() && !this.tokenManager.isExpired();
     }
     
     /**
@@ -187,6 +625,147 @@ public class VantiqConnectionManagement {
         return this.vantiq;
     }
     
+    /**
+     * Returns the publisher used to send the given payload to a topic.
+     * Payloads that are already serialized are always streamed as-is.
+     * 
+     * @param payload The payload to publish
+     * @return Topic publisher
+     */
+    public TopicPublisher getTopicPublisher(Object payload) {
+        return PayloadBody.isPreSerialized(payload) ? this.streamingPublisher : this.topicPublisher;
+    }
+    
+    /**
+     * Returns the pool sending the chunks of bulk inserts and upserts.
+     * 
+     * @return Bulk writer pool
+     */
+    public ExecutorService getBulkWorkers() {
+        return this.bulkWorkers;
+    }
+    
+    /**
+     * Returns the metrics of this connection.
+     * 
+     * @return Connector metrics
+     */
+    public ConnectorMetrics getMetrics() {
+        return this.metrics;
+    }
+    
+    /**
+     * Returns the publish batcher, which is only present if batch
+     * publishing is enabled.
+     * 
+     * @return Publish batcher or null if batching is disabled
+     */
+    public PublishBatcher getPublishBatcher() {
+        return this.publishBatcher;
+    }
+    
+    /**
+     * Returns the registry that shares the subscriptions of this connection
+     * between sources.
+     * 
+     * @return Subscription registry
+     */
+    public SubscriptionRegistry getSubscriptionRegistry() {
+        return this.subscriptionRegistry;
+    }
+    
+    /**
+     * Returns the cache of Vantiq data type schemas for this connection.
+     * 
+     * @return Metadata cache
+     */
+    public TypeMetadataCache getMetadataCache() {
+        return this.metadataCache;
+    }
+    
+    /**
+     * Returns the validator for records of the given data type, if payload
+     * validation is enabled.
+     * 
+     * @param dataType The Vantiq data type
+     * @return The record validator or null if validation is disabled
+     */
+    public RecordValidator getRecordValidator(String dataType) {
+        return this.validatePayloads ? this.metadataCache.getValidator(dataType) : null;
+    }
+    
+    /**
+     * Creates the dispatcher that delivers the events of a subscription
+     * to the flow.  The dispatcher is closed when the connection is closed.
+     * 
+     * @param name The name of the subscription, which is also the name of its metrics
+     * @param callback The callback of the subscription source
+     * @return The dispatcher or null if events are delivered directly
+     */
+    public EventDispatcher createDispatcher(String name, SourceCallback callback) {
+        if(this.dispatchQueueSize <= 0) {
+            return null;
+        }
+        
+        File spillDirectory = null;
+        if(this.dispatchOverflow == OverflowPolicy.SPILL) {
+            spillDirectory = getSpillDirectory();
+        }
+        EventDispatcher dispatcher = new EventDispatcher(name, 
+                                                         callback, 
+                                                         this.dispatchQueueSize, 
+                                                         this.dispatchWorkers, 
+                                                         this.dispatchOverflow, 
+                                                         spillDirectory, 
+                                                         this.dispatchOrderingKey,
+                                                         this.metrics.subscription(name));
+        synchronized(this.dispatchers) {
+            this.dispatchers.add(dispatcher);
+        }
+        return dispatcher;
+    }
+    
+    /**
+     * Returns the directory for spill files.  Unless a directory is configured,
+     * a directory only accessible by the current user is created, so the events
+     * are not readable by other users of the system temporary directory.
+     */
+    private File getSpillDirectory() {
+        if(this.dispatchSpillDirectory != null) {
+            return new File(this.dispatchSpillDirectory);
+        }
+        
+        synchronized(this.dispatchers) {
+            if(this.privateSpillDirectory == null) {
+                try {
+                    try {
+                        this.privateSpillDirectory = Files.createTempDirectory("vantiq-spill-", 
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))).toFile();
+                    } catch(UnsupportedOperationException ex) {
+                        // Not a POSIX file system (e.g. Windows), where the temporary directory is per user
+                        this.privateSpillDirectory = Files.createTempDirectory("vantiq-spill-").toFile();
+                    }
+                } catch(IOException ex) {
+                    throw new IllegalStateException("Unable to create the directory for spilled events", ex);
+                }
+            }
+            return this.privateSpillDirectory;
+        }
+    }
+    
+    /**
+     * Closes a dispatcher created by this connection once its subscription
+     * source has stopped.
+     * 
+     * @param dispatcher The dispatcher to close
+     */
+    public void releaseDispatcher(EventDispatcher dispatcher) {
+        synchronized(this.dispatchers) {
+            this.dispatchers.remove(dispatcher);
+        }
+        dispatcher.close();
+    }
+    
     //--------------------------------------------------------------------------
     // Getters/Setters
     //--------------------------------------------------------------------------
@@ -289,4 +868,548 @@ public class VantiqConnectionManagement {
         this.connectTimeout = connectTimeout;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns if batching of data publishes is enabled.
+     * 
+     * @return true if batch publishing is enabled
+     */
+    public boolean getBatchPublish() {
+        return batchPublish;
+    }
+
+    /**
+     * Sets if batching of data publishes is enabled.
+     * 
+     * @param batchPublish true to enable batch publishing
+     */
+    public void setBatchPublish(boolean batchPublish) {
+        this.batchPublish = batchPublish;
+    }
+
+    /**
+     * Returns the maximum number of records sent in a single batched publish.
+     * 
+     * @return The maximum batch size
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of records sent in a single batched publish.
+     * 
+     * @param maxBatchSize The maximum batch size
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds that a record waits for a 
+     * batch to fill before the batch is sent.
+     * 
+     * @return The linger time in milliseconds
+     */
+    public long getMaxBatchLinger() {
+        return maxBatchLinger;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds that a record waits for a 
+     * batch to fill before the batch is sent.
+     * 
+     * @param maxBatchLinger The linger time in milliseconds
+     */
+    public void setMaxBatchLinger(long maxBatchLinger) {
+        this.maxBatchLinger = maxBatchLinger;
+    }
+
+    /**
+     * Returns the maximum estimated size in bytes of a single batched publish.
+     * A value of 0 means no limit.
+     * 
+     * @return The maximum batch size in bytes
+     */
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the maximum estimated size in bytes of a single batched publish.
+     * A value of 0 means no limit.
+     * 
+     * @param maxBatchBytes The maximum batch size in bytes
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Returns the maximum number of batched publish requests that may be
+     * in flight at the same time.
+     * 
+     * @return The maximum number of in-flight batches
+     */
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    /**
+     * Sets the maximum number of batched publish requests that may be
+     * in flight at the same time.
+     * 
+     * @param maxInFlightBatches The maximum number of in-flight batches
+     */
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    /**
+     * Returns the number of subscription events that may be queued for
+     * each subscription source.  A value of 0 disables queueing.
+     * 
+     * @return The dispatch queue size
+     */
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+
+    /**
+     * Sets the number of subscription events that may be queued for
+     * each subscription source.  A value of 0 disables queueing.
+     * 
+     * @param dispatchQueueSize The dispatch queue size
+     */
+    public void setDispatchQueueSize(int dispatchQueueSize) {
+        this.dispatchQueueSize = dispatchQueueSize;
+    }
+
+    /**
+     * Returns the number of workers delivering queued subscription events
+     * for each subscription source.
+     * 
+     * @return The number of dispatch workers
+     */
+    public int getDispatchWorkers() {
+        return dispatchWorkers;
+    }
+
+    /**
+     * Sets the number of workers delivering queued subscription events
+     * for each subscription source.
+     * 
+     * @param dispatchWorkers The number of dispatch workers
+     */
+    public void setDispatchWorkers(int dispatchWorkers) {
+        this.dispatchWorkers = dispatchWorkers;
+    }
+
+    /**
+     * Returns the policy applied when a dispatch queue is full.
+     * 
+     * @return The overflow policy
+     */
+    public OverflowPolicy getDispatchOverflow() {
+        return dispatchOverflow;
+    }
+
+    /**
+     * Sets the policy applied when a dispatch queue is full.
+     * 
+     * @param dispatchOverflow The overflow policy
+     */
+    public void setDispatchOverflow(OverflowPolicy dispatchOverflow) {
+        this.dispatchOverflow = dispatchOverflow;
+    }
+
+    /**
+     * Returns the directory holding spilled subscription events.
+     * 
+     * @return The spill directory or null for a private temporary directory
+     */
+    public String getDispatchSpillDirectory() {
+        return dispatchSpillDirectory;
+    }
+
+    /**
+     * Sets the directory holding spilled subscription events.
+     * 
+     * @param dispatchSpillDirectory The spill directory
+     */
+    public void setDispatchSpillDirectory(String dispatchSpillDirectory) {
+        this.dispatchSpillDirectory = dispatchSpillDirectory;
+    }
+
+    /**
+     * Returns the dotted path of the event property used to keep
+     * subscription events in order.
+     * 
+     * @return The ordering key or null if events are not ordered by key
+     */
+    public String getDispatchOrderingKey() {
+        return dispatchOrderingKey;
+    }
+
+    /**
+     * Sets the dotted path of the event property used to keep
+     * subscription events in order.
+     * 
+     * @param dispatchOrderingKey The ordering key
+     */
+    public void setDispatchOrderingKey(String dispatchOrderingKey) {
+        this.dispatchOrderingKey = dispatchOrderingKey;
+    }
+
+    /**
+     * Returns the delay in milliseconds before the first attempt to
+     * resubscribe after the subscription connection drops.
+     * 
+     * @return The initial resubscribe backoff in milliseconds
+     */
+    public long getResubscribeInitialBackoff() {
+        return resubscribeInitialBackoff;
+    }
+
+    /**
+     * Sets the delay in milliseconds before the first attempt to
+     * resubscribe after the subscription connection drops.
+     * 
+     * @param resubscribeInitialBackoff The initial resubscribe backoff in milliseconds
+     */
+    public void setResubscribeInitialBackoff(long resubscribeInitialBackoff) {
+        this.resubscribeInitialBackoff = resubscribeInitialBackoff;
+    }
+
+    /**
+     * Returns the maximum delay in milliseconds between attempts to
+     * resubscribe after the subscription connection drops.
+     * 
+     * @return The maximum resubscribe backoff in milliseconds
+     */
+    public long getResubscribeMaxBackoff() {
+        return resubscribeMaxBackoff;
+    }
+
+    /**
+     * Sets the maximum delay in milliseconds between attempts to
+     * resubscribe after the subscription connection drops.
+     * 
+     * @param resubscribeMaxBackoff The maximum resubscribe backoff in milliseconds
+     */
+    public void setResubscribeMaxBackoff(long resubscribeMaxBackoff) {
+        this.resubscribeMaxBackoff = resubscribeMaxBackoff;
+    }
+
+    /**
+     * Returns the time in milliseconds that data type schemas are cached.
+     * 
+     * @return The metadata cache time-to-live in milliseconds
+     */
+    public long getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    /**
+     * Sets the time in milliseconds that data type schemas are cached.
+     * 
+     * @param metadataCacheTtl The metadata cache time-to-live in milliseconds
+     */
+    public void setMetadataCacheTtl(long metadataCacheTtl) {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+
+    /**
+     * Returns the maximum number of data type schemas held in the cache.
+     * 
+     * @return The metadata cache size
+     */
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of data type schemas held in the cache.
+     * 
+     * @param metadataCacheSize The metadata cache size
+     */
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    /**
+     * Returns if the data type schemas are loaded when connecting.
+     * 
+     * @return true if the metadata is prewarmed
+     */
+    public boolean getPrewarmMetadata() {
+        return prewarmMetadata;
+    }
+
+    /**
+     * Sets if the data type schemas are loaded when connecting.
+     * 
+     * @param prewarmMetadata true to prewarm the metadata
+     */
+    public void setPrewarmMetadata(boolean prewarmMetadata) {
+        this.prewarmMetadata = prewarmMetadata;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests used to prewarm
+     * the data type schemas.
+     * 
+     * @return The prewarm concurrency
+     */
+    public int getPrewarmConcurrency() {
+        return prewarmConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests used to prewarm
+     * the data type schemas.
+     * 
+     * @param prewarmConcurrency The prewarm concurrency
+     */
+    public void setPrewarmConcurrency(int prewarmConcurrency) {
+        this.prewarmConcurrency = prewarmConcurrency;
+    }
+
+    /**
+     * Returns if cached schemas are evicted when the data type
+     * definitions change in Vantiq.
+     * 
+     * @return true if subscribed to data type changes
+     */
+    public boolean getMetadataChangeSubscription() {
+        return metadataChangeSubscription;
+    }
+
+    /**
+     * Sets if cached schemas are evicted when the data type
+     * definitions change in Vantiq.
+     * 
+     * @param metadataChangeSubscription true to subscribe to data type changes
+     */
+    public void setMetadataChangeSubscription(boolean metadataChangeSubscription) {
+        this.metadataChangeSubscription = metadataChangeSubscription;
+    }
+
+    /**
+     * Returns if records are validated against their data type schema
+     * before being sent.
+     * 
+     * @return true if payloads are validated
+     */
+    public boolean getValidatePayloads() {
+        return validatePayloads;
+    }
+
+    /**
+     * Sets if records are validated against their data type schema
+     * before being sent.
+     * 
+     * @param validatePayloads true to validate payloads
+     */
+    public void setValidatePayloads(boolean validatePayloads) {
+        this.validatePayloads = validatePayloads;
+    }
+
+    /**
+     * Returns if publish payloads are streamed directly into the request.
+     * 
+     * @return true if publishes are streamed
+     */
+    public boolean getStreamingPublish() {
+        return streamingPublish;
+    }
+
+    /**
+     * Sets if publish payloads are streamed directly into the request.
+     * 
+     * @param streamingPublish true to stream publishes
+     */
+    public void setStreamingPublish(boolean streamingPublish) {
+        this.streamingPublish = streamingPublish;
+    }
+
+    /**
+     * Returns if streamed publish requests are compressed with gzip.
+     * 
+     * @return true if publishes are compressed
+     */
+    public boolean getCompressPublish() {
+        return compressPublish;
+    }
+
+    /**
+     * Sets if streamed publish requests are compressed with gzip.
+     * 
+     * @param compressPublish true to compress publishes
+     */
+    public void setCompressPublish(boolean compressPublish) {
+        this.compressPublish = compressPublish;
+    }
+
+    /**
+     * Returns the access token used instead of the password.
+     * 
+     * @return The access token
+     */
+    public String getAuthToken() {
+        return authToken;
+    }
+
+    /**
+     * Sets the access token used instead of the password.
+     * 
+     * @param authToken The access token
+     */
+    public void setAuthToken(String authToken) {
+        this.authToken = authToken;
+    }
+
+    /**
+     * Returns the interval in milliseconds after which the access token is renewed.
+     * 
+     * @return The refresh interval in milliseconds
+     */
+    public long getTokenRefreshInterval() {
+        return tokenRefreshInterval;
+    }
+
+    /**
+     * Sets the interval in milliseconds after which the access token is renewed.
+     * 
+     * @param tokenRefreshInterval The refresh interval in milliseconds
+     */
+    public void setTokenRefreshInterval(long tokenRefreshInterval) {
+        this.tokenRefreshInterval = tokenRefreshInterval;
+    }
+
+    /**
+     * Returns the time in milliseconds before expiry at which the access token is renewed.
+     * 
+     * @return The refresh margin in milliseconds
+     */
+    public long getTokenRefreshMargin() {
+        return tokenRefreshMargin;
+    }
+
+    /**
+     * Sets the time in milliseconds before expiry at which the access token is renewed.
+     * 
+     * @param tokenRefreshMargin The refresh margin in milliseconds
+     */
+    public void setTokenRefreshMargin(long tokenRefreshMargin) {
+        this.tokenRefreshMargin = tokenRefreshMargin;
+    }
+
+    /**
+     * Returns if the HTTP connection pool is shared with other configurations for the same server.
+     * 
+     * @return true if the connection pool is shared
+     */
+    public boolean getSharedConnectionPool() {
+        return sharedConnectionPool;
+    }
+
+    /**
+     * Sets if the HTTP connection pool is shared with other configurations for the same server.
+     * 
+     * @param sharedConnectionPool true to share the connection pool
+     */
+    public void setSharedConnectionPool(boolean sharedConnectionPool) {
+        this.sharedConnectionPool = sharedConnectionPool;
+    }
+
+    /**
+     * Returns the maximum number of idle keep-alive connections.
+     * 
+     * @return The maximum number of idle connections
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Sets the maximum number of idle keep-alive connections.
+     * 
+     * @param maxIdleConnections The maximum number of idle connections
+     */
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    /**
+     * Returns the time in milliseconds an idle connection is kept open.
+     * 
+     * @return The keep-alive time in milliseconds
+     */
+    public long getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle connection is kept open.
+     * 
+     * @param keepAliveDuration The keep-alive time in milliseconds
+     */
+    public void setKeepAliveDuration(long keepAliveDuration) {
+        this.keepAliveDuration = keepAliveDuration;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests to the server.
+     * 
+     * @return The maximum number of concurrent requests, 0 for no limit
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests to the server.
+     * 
+     * @param maxRequestsPerHost The maximum number of concurrent requests, 0 for no limit
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Returns if the metrics are registered as MBeans.
+     * 
+     * @return true if the metrics are registered
+     */
+    public boolean getJmxMetrics() {
+        return jmxMetrics;
+    }
+
+    /**
+     * Sets if the metrics are registered as MBeans.
+     * 
+     * @param jmxMetrics true to register the metrics
+     */
+    public void setJmxMetrics(boolean jmxMetrics) {
+        this.jmxMetrics = jmxMetrics;
+    }
+
+    /**
+     * Returns the maximum number of threads sending the chunks of bulk writes.
+     * 
+     * @return The number of bulk writer threads
+     */
+    public int getBulkWorkerThreads() {
+        return bulkWorkerThreads;
+    }
+
+    /**
+     * Sets the maximum number of threads sending the chunks of bulk writes.
+     * 
+     * @param bulkWorkerThreads The number of bulk writer threads
+     */
+    public void setBulkWorkerThreads(int bulkWorkerThreads) {
+        this.bulkWorkerThreads = bulkWorkerThreads;
+    }
+
+}
@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 
 import org.mule.api.annotations.Config;
@@ -42,7 +43,21 @@ import org.mule.api.annotations.param.Default;
 import org.mule.api.annotations.param.MetaDataKeyParam;
 import org.mule.api.annotations.param.Optional;
 import org.mule.api.callback.SourceCallback;
+import org.mule.api.callback.StopSourceCallback;
+import org.mule.api.store.ObjectStore;
+import org.mule.api.store.ObjectStoreManager;
+import org.mule.modules.vantiq.batch.BulkResult;
+import org.mule.modules.vantiq.batch.BulkWriter;
+import org.mule.modules.vantiq.dispatch.EventDispatcher;
 import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.error.VantiqValidationException;
+import org.mule.modules.vantiq.metadata.RecordValidator;
+import org.mule.modules.vantiq.metrics.OperationMetrics;
+import org.mule.modules.vantiq.metrics.SubscriptionMetrics;
+import org.mule.modules.vantiq.publish.PublishBatcher;
+import org.mule.modules.vantiq.select.StreamingSelect;
+import org.mule.modules.vantiq.select.Watermark;
+import org.mule.modules.vantiq.subscription.SubscriptionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +90,12 @@ public class VantiqConnector {
 
     private static final Logger log = LoggerFactory.getLogger(VantiqConnector.class); 
     
+    /**
+     * The name of the persistent object store holding the streaming select
+     * watermarks.
+     */
+    private static final String WATERMARK_STORE = "vantiq-select-watermarks";
+    
     @NotNull
     @Config
     private VantiqConnectionManagement connectionManagement;
@@ -84,22 +105,43 @@ public class VantiqConnector {
      * system.
      */
     private Vantiq vantiq;
+    
+    /**
+     * The Mule object store manager, used to persist the position of
+     * streaming selects across restarts.
+     */
+    @Inject
+    private ObjectStoreManager objectStoreManager;
 
     //--------------------------------------------------------------------------
     // Sources
     //--------------------------------------------------------------------------
 
     /**
-     * Handler class for both subscriptions and responses
+     * Handler class for both subscriptions and responses.  If a dispatcher
+     * is given, subscription events are queued on the dispatcher rather than
+     * being processed on the WebSocket thread.  Flow errors are counted in
+     * the subscription metrics and responses complete the sample of the
+     * request.
      */
     private static class SourceCallbackHandler implements SubscriptionCallback, ResponseHandler {
         
         private String path;
         private SourceCallback callback;
+        private EventDispatcher dispatcher;
+        private SubscriptionMetrics metrics;
+        private OperationMetrics.Sample sample;
         
-        public SourceCallbackHandler(SourceCallback callback, String path) {
+        public SourceCallbackHandler(SourceCallback callback, OperationMetrics.Sample sample) {
+            this.callback = callback;
+            this.sample = sample;
+        }
+        
+        public SourceCallbackHandler(SourceCallback callback, String path, EventDispatcher dispatcher, SubscriptionMetrics metrics) {
             this.callback = callback;
             this.path = path;
+            this.dispatcher = dispatcher;
+            this.metrics = metrics;
         }
         
         @Override public void onConnect() {                
@@ -107,7 +149,11 @@ public class VantiqConnector {
         }
 
         @Override public void onMessage(SubscriptionMessage message) {
-            processEvent(message.getBody());
+            if(this.dispatcher != null) {
+                this.dispatcher.dispatch(message.getBody());
+            } else {
+                processEvent(message.getBody());
+            }
         }
 
         @Override public void onError(String error) {
@@ -116,22 +162,36 @@ public class VantiqConnector {
 
         @Override public void onFailure(Throwable t) {
             log.error("Failure", t);
+            if(this.sample != null) {
+                this.sample.failed(t);
+                this.sample.stop();
+            }
         }
 
         @Override
         public void onSuccess(Object body, Response response) {
+            if(this.sample != null) {
+                this.sample.stop();
+            }
             processEvent(body);
         }
 
         @Override
         public void onError(List<VantiqError> errors, Response response) {
             log.error("Error", errors);
+            if(this.sample != null) {
+                this.sample.failed(new VantiqException((response != null) ? response.code() : 0, String.valueOf(errors)));
+                this.sample.stop();
+            }
         }
         
         private void processEvent(Object payload) {
             try {
                 this.callback.process(payload);
             } catch(Exception ex) {
+                if(this.metrics != null) {
+                    this.metrics.failed();
+                }
                 log.error("Callback Error", ex);
             }
         }
@@ -141,25 +201,42 @@ public class VantiqConnector {
     /**
      * A single entry point that creates a subscription to a specific resource
      * in the currently connected Vantiq system.  The subscription is created
-     * by creating a WebSocket through the Vantiq SDK that listens for 
-     * event messages.
+     * through the subscription registry of the connection, which shares a single
+     * WebSocket and a single server subscription per path between all sources,
+     * and resubscribes if the WebSocket drops.
+     * 
+     * If a dispatch queue is configured, the events are delivered to the flow
+     * by the workers of an {@link EventDispatcher} for this subscription.
      * 
      * @param resource The Vantiq resource to listen, either TOPICS or TYPES. 
      * @param id The unique ID for the specific resource instance to listen to
      * @param op Only for TYPE events, the specific event type to subscribe to
      * @param callback The callback to use on the arrival of the event
+     * @return Callback that removes the subscription when the source stops
      */
-    private void subscribe(Vantiq.SystemResources resource, 
-                           String id,
-                           TypeOperation op, 
-                           SourceCallback callback) {
+    private StopSourceCallback subscribe(Vantiq.SystemResources resource, 
+                                         String id,
+                                         TypeOperation op, 
+                                         SourceCallback callback) {
         final String path;
         if(op == null) {
             path = resource + "/" + id;            
         } else {
             path = resource + "/" + id + "/" + op.toString().toLowerCase();
         } 
-        getVantiq().subscribe(resource.value(), id, op, new SourceCallbackHandler(callback, path));
+        final EventDispatcher dispatcher = this.connectionManagement.createDispatcher(path, callback);
+        final SubscriptionMetrics metrics = this.connectionManagement.getMetrics().subscription(path);
+        final SubscriptionRegistry.Subscription subscription = this.connectionManagement.getSubscriptionRegistry()
+            .subscribe(resource, id, op, new SourceCallbackHandler(callback, path, dispatcher, metrics));
+        
+        return new StopSourceCallback() {
+            @Override public void stop() throws Exception {
+                subscription.unsubscribe();
+                if(dispatcher != null) {
+                    connectionManagement.releaseDispatcher(dispatcher);
+                }
+            }
+        };
     }
     
     /**
@@ -170,11 +247,12 @@ public class VantiqConnector {
      * given topic.  The message will be the payload of the Vantiq event.
      * 
      * @param topic The topic of interest
+     * @return Callback that removes the subscription when the source stops
      */
     @Source(sourceStrategy = SourceStrategy.NONE)
-    public void subscribeTopic(String topic,
-                               SourceCallback callback) {
-        this.subscribe(Vantiq.SystemResources.TOPICS, topic, null, callback);
+    public StopSourceCallback subscribeTopic(String topic,
+                                             SourceCallback callback) {
+        return this.subscribe(Vantiq.SystemResources.TOPICS, topic, null, callback);
     }
 
     /**
@@ -194,26 +272,29 @@ public class VantiqConnector {
      * 
      * @param dataType The Vantiq data type
      * @param operation The specific type operation
+     * @return Callback that removes the subscription when the source stops
      */
     @Source(sourceStrategy = SourceStrategy.NONE)
     @UserDefinedMetaData
-    public void subscribeType(@MetaDataKeyParam String dataType, 
-                              TypeOperation operation,
-                              SourceCallback callback) {
-        this.subscribe(Vantiq.SystemResources.TYPES, dataType, operation, callback);
+    public StopSourceCallback subscribeType(@MetaDataKeyParam String dataType, 
+                                            TypeOperation operation,
+                                            SourceCallback callback) {
+        return this.subscribe(Vantiq.SystemResources.TYPES, dataType, operation, callback);
     }
     
     /**
      * Creates a source for actions on the given Vantiq system.  This method
      * creates a subscription that listens for the action events.  The supported
      * actions can be gotten by the getSupportedAction processor.
+     * 
+     * @return Callback that removes the subscription when the source stops
      */
     @Source(sourceStrategy = SourceStrategy.NONE)
-    public void subscribeAction(String action,
-                                SourceCallback callback) {
+    public StopSourceCallback subscribeAction(String action,
+                                              SourceCallback callback) {
         // Actions are simply translated to the adapter topic to subscribe to
         String topic = "/system/adapter/outbound/" + action;
-        this.subscribeTopic(topic, callback);
+        return this.subscribeTopic(topic, callback);
     }
   
     /**
@@ -239,7 +320,62 @@ public class VantiqConnector {
                            @Optional List<String> selectList,
                            @Optional Map<String,Object> where,
                            SourceCallback callback) {
-        getVantiq().select(dataType, selectList, where, null, new SourceCallbackHandler(callback, null));
+        OperationMetrics.Sample sample = startSample("selectData");
+        getVantiq().select(dataType, selectList, where, null, new SourceCallbackHandler(callback, sample));
+    }
+    
+    /**
+     * Creates a source that polls the Vantiq system for records that changed
+     * since the previous poll.  Unlike selectData, the records are read in
+     * pages of pageSize records ordered by the watermark field and are emitted
+     * either one record per message (emitSize of 1) or as lists of emitSize
+     * records.
+     * 
+     * The highest watermark value emitted is saved in a persistent Mule object
+     * store, so each poll, including the first poll after a restart, only reads 
+     * the records with a watermark at or after that value.  Records without a
+     * value for the watermark field are not emitted.
+     * 
+     * The where clause and select list are the same as for selectData.
+     *
+     * @param dataType The Vantiq data type to query
+     * @param selectList The optional list of properties to return for each record
+     * @param where The optional where clause to filter the data
+     * @param watermarkField The field used to order the records and track progress
+     * @param pageSize The number of records read from Vantiq in each request
+     * @param emitSize The number of records in each message
+     * @param watermarkKey The optional key of the saved watermark, required if several 
+     *                     sources stream the same data type with different filters
+     * @param callback Callback for the messages
+     * @throws Exception If the query, the callback or the object store fails
+     */
+    @Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 30000)
+    @UserDefinedMetaData
+    public void selectDataStream(@MetaDataKeyParam          String dataType, 
+                                 @Optional                  List<String> selectList,
+                                 @Optional                  Map<String,Object> where,
+                                 @Default("ars_modifiedAt") String watermarkField,
+                                 @Default("500")            int pageSize,
+                                 @Default("1")              int emitSize,
+                                 @Optional                  String watermarkKey,
+                                 SourceCallback callback) throws Exception {
+        ObjectStore<Watermark> store = this.objectStoreManager.getObjectStore(WATERMARK_STORE, true);
+        String storeKey = watermarkKey;
+        if(storeKey == null) {
+            storeKey = this.connectionManagement.getServer() + "/" + dataType + "/" + watermarkField;
+        }
+        
+        StreamingSelect select = new StreamingSelect(getVantiq(), store, storeKey, dataType, selectList, 
+                                                     where, watermarkField, pageSize, emitSize);
+        OperationMetrics.Sample sample = startSample("selectDataStream");
+        try {
+            select.poll(callback);
+        } catch(Exception ex) {
+            sample.failed(ex);
+            throw ex;
+        } finally {
+            sample.stop();
+        }
     }
     
     //--------------------------------------------------------------------------
@@ -257,13 +393,21 @@ public class VantiqConnector {
      */
     @Processor
     public List<String> getSupportedActions() throws IOException {                
-        VantiqResponse resp = checkResponse(getVantiq().execute("Connector_GetControlActions", Collections.emptyMap()));
+        OperationMetrics.Sample sample = startSample("getSupportedActions");
+        try {
+            VantiqResponse resp = checkResponse(getVantiq().execute("Connector_GetControlActions", Collections.emptyMap()));
 
-        List<String> result = new ArrayList<String>();
-        for(JsonElement element : (JsonArray) resp.getBody()) {
-            result.add(element.getAsJsonObject().get("action").getAsString());
+            List<String> result = new ArrayList<String>();
+            for(JsonElement element : (JsonArray) resp.getBody()) {
+                result.add(element.getAsJsonObject().get("action").getAsString());
+            }
+            return result;
+        } catch(RuntimeException ex) {
+            sample.failed(ex);
+            throw ex;
+        } finally {
+            sample.stop();
         }
-        return result;
     }
     
     /**
@@ -274,12 +418,20 @@ public class VantiqConnector {
      * The payload is a list of records where each record should 
      * match the fields in the Vantiq data type.
      * 
+     * If batch publishing is enabled in the configuration, then records 
+     * published concurrently for the same data type are merged into a 
+     * single Vantiq publish.
+     * 
+     * If payload validation is enabled in the configuration, then all records
+     * are checked against the data type schema and normalized before publishing.
+     * 
      * DataSense is used to query Vantiq for the available data types that
      * are defined in the Vantiq system.
      * 
      * @param dataType The target Vantiq data type
      * @param payload The list of records to send
      *
+     * @throws VantiqValidationException Thrown if validation is enabled and a record is invalid
      * @throws VantiqException Thrown if an error occurs
      * @throws IOException If an network error occurs
      */
@@ -289,23 +441,48 @@ public class VantiqConnector {
                             @Default("#[payload]") final List<Map<String,Object>> payload) throws IOException {
         String topic = this.connectionManagement.getTopic();
         
-        //
-        // Build message with the fields
-        //
-        //  type:    dataType,
-        //  content: payload
-        //
-        Map<String,Object> message = new HashMap<String,Object>();
-        message.put("type", dataType);
-        message.put("content", payload);
-        
-        this.publishTopic(topic, message);
+        OperationMetrics.Sample sample = startSample("publishData");
+        try {
+            List<Map<String,Object>> content = payload;
+            RecordValidator validator = this.connectionManagement.getRecordValidator(dataType);
+            if(validator != null) {
+                content = validator.normalizeAll(payload);
+            }
+            
+            PublishBatcher batcher = this.connectionManagement.getPublishBatcher();
+            if(batcher != null) {
+                batcher.publish(topic, dataType, content);
+                return;
+            }
+            
+            //
+            // Build message with the fields
+            //
+            //  type:    dataType,
+            //  content: payload
+            //
+            Map<String,Object> message = new HashMap<String,Object>();
+            message.put("type", dataType);
+            message.put("content", content);
+            
+            this.connectionManagement.getTopicPublisher(message).publish(topic, message);
+        } catch(RuntimeException | IOException ex) {
+            sample.failed(ex);
+            throw ex;
+        } finally {
+            sample.stop();
+        }
     }
     
     /**
      * Publishes data to Vantiq on a specific Vantiq topic as an ad-hoc means for pushing
      * data into Vantiq.  To handle the data in Vantiq, a rule should exist that listens on
-     * the given topic.  The payload is transformed to JSON using GSON. 
+     * the given topic.  The payload is transformed to JSON using GSON.  A payload
+     * that is already serialized JSON, i.e. a byte[] or an InputStream such as a
+     * Mule streaming payload, is sent as-is without being parsed.
+     * 
+     * If streaming publish is enabled in the configuration, the JSON is written
+     * directly into the request as it is generated, optionally compressed.
      * 
      * @param topic The name of the topic (e.g. "/my/topic")
      * @param payload The content of the publish event.
@@ -316,22 +493,128 @@ public class VantiqConnector {
     @Processor
     public void publishTopic(String topic,
                              @Default("#[payload]") final Object payload) throws IOException {
-        checkResponse(getVantiq().publish(Vantiq.SystemResources.TOPICS.value(), topic, payload)); 
+        OperationMetrics.Sample sample = startSample("publishTopic");
+        try {
+            this.connectionManagement.getTopicPublisher(payload).publish(topic, payload);
+        } catch(RuntimeException | IOException ex) {
+            sample.failed(ex);
+            throw ex;
+        } finally {
+            sample.stop();
+        }
     }
-
+    
     /**
      * Inserts data into Vantiq of a specific type.
      * 
+     * If payload validation is enabled in the configuration, then the record is
+     * checked against the data type schema and normalized before inserting.
+     * 
      * @param dataType The target Vantiq data type
      * @param payload The record to insert
      * 
+     * @throws VantiqValidationException Thrown if validation is enabled and the record is invalid
      * @throws VantiqException Thrown if an error occurs
      * @throws IOException If an network error occurs
      */
     @Processor 
     public void insertData(@MetaDataKeyParam final String dataType,
                            @Default("#[payload]") final Map<String,Object> payload) throws IOException {
-        checkResponse(getVantiq().insert(dataType, payload));
+        OperationMetrics.Sample sample = startSample("insertData");
+        try {
+            Map<String,Object> record = payload;
+            RecordValidator validator = this.connectionManagement.getRecordValidator(dataType);
+            if(validator != null) {
+                record = validator.normalize(payload);
+            }
+            checkResponse(getVantiq().insert(dataType, record));
+        } catch(RuntimeException ex) {
+            sample.failed(ex);
+            throw ex;
+        } finally {
+            sample.stop();
+        }
+    }
+    
+    /**
+     * Inserts a large number of records into Vantiq of a specific type.  The
+     * records are split into chunks that are each sent as a single request, with
+     * up to maxConcurrency chunks sent in parallel.  Records are read from the
+     * payload as the chunks are sent, so an iterator may be used to stream
+     * records without holding the whole input in memory.
+     * 
+     * Failed chunks do not stop the processing of the remaining records.  If
+     * payload validation is enabled in the configuration, invalid records are
+     * rejected without being sent and reported as failed.  The returned result
+     * reports the number of records written, the indexes of the records that
+     * failed and the latency of each chunk.
+     * 
+     * @param dataType The target Vantiq data type
+     * @param payload The records to insert, as a list or an iterator
+     * @param chunkSize The number of records sent in each request
+     * @param maxConcurrency The maximum number of requests sent in parallel
+     * @return The aggregate result of the insert
+     * 
+     * @throws IOException If interrupted while waiting for the chunks to complete
+     */
+    @Processor
+    @UserDefinedMetaData
+    public BulkResult insertBatch(@MetaDataKeyParam      final String dataType,
+                                  @Default("#[payload]") final Object payload,
+                                  @Default("100")        final int chunkSize,
+                                  @Default("4")          final int maxConcurrency) throws IOException {
+        BulkWriter writer = new BulkWriter(getVantiq(), this.connectionManagement.getBulkWorkers(), 
+                                           BulkWriter.Operation.INSERT, chunkSize, maxConcurrency,
+                                           this.connectionManagement.getRecordValidator(dataType));
+        return writeBulk("insertBatch", writer, dataType, payload);
+    }
+    
+    /**
+     * Upserts a large number of records into Vantiq of a specific type.  Records
+     * are inserted or, if a record with the same natural key exists, updated.
+     * The records are processed in chunks as described for insertBatch.
+     * 
+     * @param dataType The target Vantiq data type
+     * @param payload The records to upsert, as a list or an iterator
+     * @param chunkSize The number of records sent in each request
+     * @param maxConcurrency The maximum number of requests sent in parallel
+     * @return The aggregate result of the upsert
+     * 
+     * @throws IOException If interrupted while waiting for the chunks to complete
+     */
+    @Processor
+    @UserDefinedMetaData
+    public BulkResult upsertBatch(@MetaDataKeyParam      final String dataType,
+                                  @Default("#[payload]") final Object payload,
+                                  @Default("100")        final int chunkSize,
+                                  @Default("4")          final int maxConcurrency) throws IOException {
+        BulkWriter writer = new BulkWriter(getVantiq(), this.connectionManagement.getBulkWorkers(), 
+                                           BulkWriter.Operation.UPSERT, chunkSize, maxConcurrency,
+                                           this.connectionManagement.getRecordValidator(dataType));
+        return writeBulk("upsertBatch", writer, dataType, payload);
+    }
+    
+    /**
+     * Writes the records of the payload with the given bulk writer, recording
+     * the metrics of the operation.
+     */
+    private BulkResult writeBulk(String operation, BulkWriter writer, String dataType, Object payload) throws IOException {
+        OperationMetrics.Sample sample = startSample(operation);
+        try {
+            return writer.write(dataType, BulkWriter.toIterator(payload));
+        } catch(RuntimeException | IOException ex) {
+            sample.failed(ex);
+            throw ex;
+        } finally {
+            sample.stop();
+        }
+    }
+    
+    /**
+     * Starts timing an invocation of the given processor or source
+     */
+    private OperationMetrics.Sample startSample(String operation) {
+        return this.connectionManagement.getMetrics().operation(operation).start();
     }
     
     /**
@@ -380,5 +663,23 @@ public class VantiqConnector {
     public Vantiq getVantiq() {
         return this.vantiq;
     }
+    
+    /**
+     * Returns the Mule object store manager
+     * 
+     * @return The object store manager
+     */
+    public ObjectStoreManager getObjectStoreManager() {
+        return objectStoreManager;
+    }
+
+    /**
+     * Sets the Mule object store manager
+     * 
+     * @param objectStoreManager The object store manager
+     */
+    public void setObjectStoreManager(ObjectStoreManager objectStoreManager) {
+        this.objectStoreManager = objectStoreManager;
+    }
 
 }
\ No newline at end of file
@@ -39,15 +39,13 @@ import org.mule.common.metadata.builder.DefaultMetaDataBuilder;
 import org.mule.common.metadata.builder.DynamicObjectBuilder;
 import org.mule.common.metadata.datatype.DataType;
 import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.metadata.TypeMetadataCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-import io.vantiq.client.Vantiq;
-import io.vantiq.client.VantiqResponse;
-
 /**
  * DataSense resolver that is responsible for querying Vantiq for data type information 
  * from the Vantiq system.
@@ -61,29 +59,18 @@ public class VantiqDataSenseResolver {
     
     @Inject
     private VantiqConnector connector;
-
-    private Vantiq vantiq;
     
     /**
-     * Retrieves the list of keys based on the Vantiq data types
+     * Retrieves the list of keys based on the Vantiq data types.  The list
+     * is served from the metadata cache of the connection.
      * 
      * @return The list of data types from Vantiq
      * @throws Exception If anything fails
      */
-    @SuppressWarnings("unchecked")
     @MetaDataKeyRetriever
     public List<MetaDataKey> getMetaDataKeys() throws Exception {
-        List<String> props = new ArrayList<String>();
-        props.add("name");
-        VantiqResponse response = vantiq.select(Vantiq.SystemResources.TYPES.value(), 
-                                                props, null, null);
-        if(!response.isSuccess()) {
-            throw new VantiqException(response);
-        }
         List<MetaDataKey> keys = new ArrayList<MetaDataKey>();
-
-        for(JsonObject entry : (List<JsonObject>) response.getBody()) {
-            String typeName = ((JsonObject) entry).get("name").getAsString();
+        for(String typeName : getMetadataCache().getTypeNames()) {
             keys.add(new DefaultMetaDataKey(typeName, typeName));
         }
 
@@ -91,7 +78,8 @@ public class VantiqDataSenseResolver {
     }
 
     /**
-     * Get metadata for the given data type from Vantiq
+     * Get metadata for the given data type from Vantiq.  The metadata
+     * is served from the metadata cache of the connection.
      * 
      * @param key The key selected from the list of valid keys
      * @return The MetaData model of that corresponds to the key
@@ -99,13 +87,16 @@ public class VantiqDataSenseResolver {
      */
     @MetaDataRetriever
     public MetaData getMetaData(MetaDataKey key) throws Exception {
-        VantiqResponse response = vantiq.selectOne(Vantiq.SystemResources.TYPES.value(), key.getId());
-        if(!response.isSuccess()) {
-            log.error("ERROR", response);
-            throw new VantiqException(response);
+        try {
+            return getMetadataCache().getMetaData(key.getId());
+        } catch(VantiqException ex) {
+            log.error("ERROR", ex.getResponse());
+            throw ex;
         }
-        
-        return buildMetaData(key.getId(), (JsonObject) response.getBody());
+    }
+    
+    private TypeMetadataCache getMetadataCache() {
+        return this.connector.getConnectionManagement().getMetadataCache();
     }
     
     /**
@@ -180,6 +171,5 @@ public class VantiqDataSenseResolver {
      */
     public void setConnector(VantiqConnector connector) {
         this.connector = connector;
-        this.vantiq = this.connector.getConnectionManagement().getVantiq();
     }
 }
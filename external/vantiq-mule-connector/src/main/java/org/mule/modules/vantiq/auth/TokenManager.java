@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.auth;
+
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.vantiq.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Keeps the access token of a Vantiq SDK instance valid.  The expiry of the
+ * token is read from its <code>exp</code> claim if the token is a JWT.  When
+ * the token was obtained with a password, it is renewed in the background
+ * before it expires or after a fixed interval, so requests never fail with
+ * an expired token and the connection does not need to be re-established.
+ * Vantiq tokens are usually opaque, so they are only renewed if an interval
+ * is configured.
+ * A token provided in the configuration cannot be renewed and the connection
+ * is reported as invalid once it expires.
+ *
+ * @author Vantiq
+ */
+public class TokenManager {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenManager.class);
+
+    private static final Gson gson = new Gson();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long RETRY_DELAY = 10000;
+
+    private final Vantiq vantiq;
+    private final String username;
+    private final String password;
+    private final long refreshInterval;
+    private final long refreshMargin;
+    private final ScheduledExecutorService timer;
+
+    private volatile long expiresAt = 0;
+    private ScheduledFuture<?> scheduled;
+    private boolean closed = false;
+
+    /**
+     * Creates a token manager.
+     *
+     * @param vantiq The authenticated Vantiq SDK instance
+     * @param username The username used to renew the token
+     * @param password The password used to renew the token, or null if the token cannot be renewed
+     * @param refreshInterval The time in milliseconds after which the token is renewed, 0 only renews before expiry
+     * @param refreshMargin The time in milliseconds before expiry at which the token is renewed
+     */
+    public TokenManager(Vantiq vantiq, String username, String password, long refreshInterval, long refreshMargin) {
+        this.vantiq          = vantiq;
+        this.username        = username;
+        this.password        = password;
+        this.refreshInterval = Math.max(0, refreshInterval);
+        this.refreshMargin   = Math.max(0, refreshMargin);
+        this.timer           = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("vantiq-token-refresh"));
+    }
+
+    /**
+     * Starts tracking the current token of the SDK instance
+     */
+    public synchronized void start() {
+        tokenChanged();
+    }
+
+    /**
+     * Returns if the token is known to have expired
+     *
+     * @return true if the token has expired
+     */
+    public boolean isExpired() {
+        return this.expiresAt > 0 && System.currentTimeMillis() >= this.expiresAt;
+    }
+
+    /**
+     * Returns the time at which the token expires
+     *
+     * @return Expiry time in epoch milliseconds, or 0 if unknown
+     */
+    public long getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    /**
+     * Stops renewing the token
+     */
+    public synchronized void close() {
+        this.closed = true;
+        if(this.scheduled != null) {
+            this.scheduled.cancel(false);
+            this.scheduled = null;
+        }
+        this.timer.shutdownNow();
+    }
+
+    private void tokenChanged() {
+        this.expiresAt = readExpiry(this.vantiq.getAccessToken());
+
+        long delay = -1;
+        if(this.expiresAt > 0) {
+            delay = Math.max(0, this.expiresAt - this.refreshMargin - System.currentTimeMillis());
+        }
+        if(this.refreshInterval > 0 && (delay < 0 || this.refreshInterval < delay)) {
+            delay = this.refreshInterval;
+        }
+        if(delay < 0) {
+            log.debug("Access token has no known expiry and is not refreshed");
+            return;
+        }
+        if(this.password == null) {
+            if(this.expiresAt > 0) {
+                log.warn("Access token expires in " + (this.expiresAt - System.currentTimeMillis()) / 1000 + 
+                         " seconds and cannot be refreshed since it was provided in the configuration");
+            }
+            return;
+        }
+        schedule(delay);
+    }
+
+    private void schedule(long delay) {
+        try {
+            this.scheduled = this.timer.schedule(new Runnable() {
+                @Override public void run() {
+                    refresh();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            log.debug("Access token refresh in " + delay + " ms");
+        } catch(RuntimeException ex) {
+            // Timer is shut down, so the manager has been closed
+        }
+    }
+
+    private void refresh() {
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+        }
+
+        // Authenticate without holding the lock, so close() does not wait for the request
+        VantiqResponse response = null;
+        try {
+            response = this.vantiq.authenticate(this.username, this.password);
+        } catch(RuntimeException ex) {
+            log.error("Access token refresh failed", ex);
+        }
+
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+            if(response != null && response.isSuccess()) {
+                log.debug("Access token refreshed for user '" + this.username + "'");
+                tokenChanged();
+            } else {
+                if(response != null) {
+                    log.error("Access token refresh failed: " + response);
+                }
+                // Keep trying until the token expires, after which the connection is invalid
+                schedule(RETRY_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Reads the expiry of a JWT access token
+     *
+     * @param token The access token
+     * @return Expiry time in epoch milliseconds, or 0 if the token is not a JWT with an expiry
+     */
+    static long readExpiry(String token) {
+        if(token == null) {
+            return 0;
+        }
+        String[] parts = token.split("\\.");
+        if(parts.length != 3) {
+            return 0;
+        }
+        try {
+            byte[] claims = Base64.getUrlDecoder().decode(parts[1]);
+            JsonObject json = gson.fromJson(new String(claims, UTF_8), JsonObject.class);
+            JsonElement exp = json.get("exp");
+            return (exp != null && !exp.isJsonNull()) ? exp.getAsLong() * 1000 : 0;
+        } catch(RuntimeException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The aggregate result of a bulk insert or upsert.
+ *
+ * @author Vantiq
+ */
+public class BulkResult {
+
+    private long total;
+    private long succeeded;
+    private long failed;
+    private final List<Long> failedIndexes = new ArrayList<Long>();
+    private final List<Long> chunkLatencies = new ArrayList<Long>();
+    private final List<String> errors = new ArrayList<String>();
+
+    /**
+     * Records the outcome of a single chunk.
+     *
+     * @param indexes The indexes in the input of the records in the chunk
+     * @param count The number of records in the chunk
+     * @param latency The time in milliseconds taken to send the chunk
+     * @param error The error message if the chunk failed, otherwise null
+     */
+    synchronized void addChunk(long[] indexes, int count, long latency, String error) {
+        this.total += count;
+        this.chunkLatencies.add(latency);
+        if(error == null) {
+            this.succeeded += count;
+        } else {
+            this.failed += count;
+            for(int i = 0; i < count; i++) {
+                this.failedIndexes.add(indexes[i]);
+            }
+            this.errors.add(error);
+        }
+    }
+
+    /**
+     * Records a record rejected by validation before being sent.
+     *
+     * @param index The index in the input of the record
+     * @param errors The validation errors of the record
+     */
+    synchronized void addRejected(long index, List<String> errors) {
+        this.total++;
+        this.failed++;
+        this.failedIndexes.add(index);
+        this.errors.addAll(errors);
+    }
+
+    /**
+     * Returns the number of records read from the input
+     *
+     * @return The total number of records
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of records successfully written
+     *
+     * @return The number of successful records
+     */
+    public synchronized long getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Returns the number of records that failed to be written
+     *
+     * @return The number of failed records
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the indexes in the input of the records that failed, in
+     * ascending order.
+     *
+     * @return The failed record indexes
+     */
+    public synchronized List<Long> getFailedIndexes() {
+        List<Long> result = new ArrayList<Long>(this.failedIndexes);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the time in milliseconds taken to send each chunk, in
+     * order of completion.
+     *
+     * @return The chunk latencies in milliseconds
+     */
+    public synchronized List<Long> getChunkLatencies() {
+        return new ArrayList<Long>(this.chunkLatencies);
+    }
+
+    /**
+     * Returns the error messages of the failed chunks and every validation
+     * error of the rejected records.
+     *
+     * @return The error messages
+     */
+    public synchronized List<String> getErrors() {
+        return new ArrayList<String>(this.errors);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BulkResult[total=" + total + ", succeeded=" + succeeded + ", failed=" + failed +
+               ", chunks=" + chunkLatencies.size() + "]";
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.batch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.vantiq.metadata.RecordValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Writes a stream of records into a Vantiq data type in chunks.  Each chunk
+ * is sent as a single insert (or upsert) request of an array of records.
+ * Chunks are sent on the worker pool of the connection and at most a fixed
+ * number of chunks are outstanding at any time, so the records are read from
+ * the input only as fast as they are written and memory use does not grow
+ * with the size of the input.
+ *
+ * If a validator is given, each record is checked and normalized as it is
+ * read.  Invalid records are reported as failed without being sent.
+ *
+ * @author Vantiq
+ */
+public class BulkWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkWriter.class);
+
+    /**
+     * The Vantiq operation used to write each chunk
+     */
+    public enum Operation { INSERT, UPSERT }
+
+    private final Vantiq vantiq;
+    private final Executor workers;
+    private final Operation operation;
+    private final int chunkSize;
+    private final int maxConcurrency;
+    private final RecordValidator validator;
+
+    /**
+     * Creates a bulk writer.
+     *
+     * @param vantiq The Vantiq SDK instance used to send the chunks
+     * @param workers The pool sending the chunks, shared by all writers of the connection
+     * @param operation The operation used to write the records
+     * @param chunkSize The number of records sent in each request
+     * @param maxConcurrency The maximum number of concurrent requests
+     */
+    public BulkWriter(Vantiq vantiq, Executor workers, Operation operation, int chunkSize, int maxConcurrency) {
+        this(vantiq, workers, operation, chunkSize, maxConcurrency, null);
+    }
+
+    /**
+     * Creates a bulk writer that validates the records before sending them.
+     *
+     * @param vantiq The Vantiq SDK instance used to send the chunks
+     * @param workers The pool sending the chunks, shared by all writers of the connection
+     * @param operation The operation used to write the records
+     * @param chunkSize The number of records sent in each request
+     * @param maxConcurrency The maximum number of concurrent requests
+     * @param validator The validator for the records, or null to send records unchecked
+     */
+    public BulkWriter(Vantiq vantiq, 
+                      Executor workers, 
+                      Operation operation, 
+                      int chunkSize, 
+                      int maxConcurrency, 
+                      RecordValidator validator) {
+        this.vantiq         = vantiq;
+        this.workers        = workers;
+        this.operation      = operation;
+        this.chunkSize      = Math.max(1, chunkSize);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.validator      = validator;
+    }
+
+    /**
+     * Returns an iterator over the records of the given payload.  Iterators,
+     * iterables (e.g. lists) and arrays are supported.
+     *
+     * @param payload The records to write
+     * @return Iterator over the records
+     * @throws IllegalArgumentException If the payload is not a supported collection
+     */
+    public static Iterator<?> toIterator(Object payload) {
+        if(payload instanceof Iterator) {
+            return (Iterator<?>) payload;
+        } else if(payload instanceof Iterable) {
+            return ((Iterable<?>) payload).iterator();
+        } else if(payload instanceof Object[]) {
+            return Arrays.asList((Object[]) payload).iterator();
+        }
+        String type = (payload == null) ? "null" : payload.getClass().getName();
+        throw new IllegalArgumentException("Payload must be a list or an iterator of records, not " + type);
+    }
+
+    /**
+     * Writes all records from the given iterator into the given data type.  This
+     * method returns once every chunk has completed.  Chunk failures are recorded
+     * in the result rather than thrown.  If reading or validating the records
+     * throws, the exception is passed on once the chunks already sent have completed.
+     *
+     * @param dataType The target Vantiq data type
+     * @param records The records to write
+     * @return The aggregate result of all chunks
+     * @throws IOException If interrupted while waiting for the chunks to complete, or
+     *                     if the connection is closed
+     */
+    public BulkResult write(final String dataType, Iterator<?> records) throws IOException {
+        final BulkResult result = new BulkResult();
+        final Semaphore permits = new Semaphore(this.maxConcurrency);
+
+        boolean complete = false;
+        try {
+            long index = 0;
+            List<String> errors = new ArrayList<String>(1);
+            while(records.hasNext()) {
+                final List<Object> chunk = new ArrayList<Object>(this.chunkSize);
+                final long[] indexes = new long[this.chunkSize];
+                while(chunk.size() < this.chunkSize && records.hasNext()) {
+                    Object record = records.next();
+                    if(this.validator != null) {
+                        record = this.validator.normalize(record, index, errors);
+                        if(record == null) {
+                            result.addRejected(index, errors);
+                            errors.clear();
+                            index++;
+                            continue;
+                        }
+                    }
+                    indexes[chunk.size()] = index++;
+                    chunk.add(record);
+                }
+                if(chunk.isEmpty()) {
+                    break;
+                }
+
+                // Wait for a free slot so that at most maxConcurrency chunks are held in memory
+                permits.acquire();
+                try {
+                    this.workers.execute(new Runnable() {
+                        @Override public void run() {
+                            try {
+                                writeChunk(dataType, indexes, chunk, result);
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                } catch(RejectedExecutionException ex) {
+                    permits.release();
+                    throw new IOException("Connection closed during bulk " + this.operation.toString().toLowerCase());
+                }
+            }
+
+            // Wait for the outstanding chunks to complete
+            permits.acquire(this.maxConcurrency);
+            permits.release(this.maxConcurrency);
+            complete = true;
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during bulk " + this.operation.toString().toLowerCase());
+        } finally {
+            if(!complete) {
+                awaitChunks(permits);
+            }
+        }
+
+        log.debug("Bulk " + this.operation.toString().toLowerCase() + " into " + dataType + ": " + result);
+        return result;
+    }
+
+    /**
+     * Waits for the chunks already sent when the write fails part way, e.g. if the
+     * records cannot be read, so no requests are left running after write() returns
+     */
+    private void awaitChunks(Semaphore permits) {
+        boolean interrupted = Thread.interrupted();
+        while(true) {
+            try {
+                permits.acquire(this.maxConcurrency);
+                permits.release(this.maxConcurrency);
+                break;
+            } catch(InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeChunk(String dataType, long[] indexes, List<Object> chunk, BulkResult result) {
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            VantiqResponse response;
+            if(this.operation == Operation.UPSERT) {
+                response = this.vantiq.upsert(dataType, chunk);
+            } else {
+                response = this.vantiq.insert(dataType, chunk);
+            }
+            if(!response.isSuccess()) {
+                error = response.toString();
+            }
+        } catch(RuntimeException ex) {
+            error = ex.toString();
+        }
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if(error != null) {
+            log.error("Bulk " + this.operation.toString().toLowerCase() + " of records " + indexes[0] +
+                      "-" + indexes[chunk.size() - 1] + " into " + dataType + " failed: " + error);
+        }
+        result.addChunk(indexes, chunk.size(), latency, error);
+    }
+}
@@ -0,0 +1,380 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.dispatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.mule.api.callback.SourceCallback;
+import org.mule.modules.vantiq.metrics.SubscriptionMetrics;
+import org.mule.modules.vantiq.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Decouples the delivery of subscription events from the WebSocket thread of
+ * the Vantiq SDK.  Events are placed on a bounded queue and passed to the flow
+ * by a pool of workers, so a slow flow does not stall the other subscriptions
+ * sharing the same connection.
+ *
+ * The queue is split into one lane per worker.  If an ordering key is given,
+ * all events with the same key go to the same lane and so are processed in
+ * the order received.  Without an ordering key, events are spread across the
+ * lanes and are only ordered when a single worker is used.
+ *
+ * When a lane is full, the {@link OverflowPolicy} decides whether the WebSocket
+ * thread waits, the oldest event is dropped, or the event is spilled to disk.
+ * Spilled events are stored as plain JSON and replayed as the maps, lists,
+ * strings, numbers and booleans that Gson parses from it, as for the events
+ * received from the Vantiq SDK.
+ * The queue depth, lag, overflow counts and flow errors are reported through
+ * the {@link SubscriptionMetrics} of the subscription.
+ *
+ * @author Vantiq
+ */
+public class EventDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Time a blocked dispatch waits for room in the queue before checking for shutdown
+     */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    /**
+     * Placed in the lanes on close to wake up the idle workers
+     */
+    private static final Event CLOSE = new Event(null, 0);
+
+    /**
+     * Time given to the workers to drain the queues on close
+     */
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    private final String name;
+    private final SourceCallback callback;
+    private final OverflowPolicy policy;
+    private final String[] orderingKey;
+    private final List<Lane> lanes = new ArrayList<Lane>();
+    private final ExecutorService workers;
+    private final SubscriptionMetrics metrics;
+
+    private final AtomicLong roundRobin = new AtomicLong();
+
+    private final LongSupplier queueDepth = new LongSupplier() {
+        @Override
+        public long getAsLong() {
+            return getQueueDepth();
+        }
+    };
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a dispatcher and starts its workers.
+     *
+     * @param name The name of the subscription, used for thread and spill file names
+     * @param callback The callback that passes the events to the flow
+     * @param queueSize The total number of events that may be queued in memory
+     * @param workerCount The number of workers, each serving one lane of the queue
+     * @param policy The policy when a lane is full
+     * @param spillDirectory The directory for spill files, only used by the SPILL policy
+     * @param orderingKey The optional dotted path of the property in the event used to
+     *                    order events, e.g. "value.id"
+     * @param metrics The metrics of the subscription
+     */
+    public EventDispatcher(String name,
+                           SourceCallback callback,
+                           int queueSize,
+                           int workerCount,
+                           OverflowPolicy policy,
+                           File spillDirectory,
+                           String orderingKey,
+                           SubscriptionMetrics metrics) {
+        this.name        = name;
+        this.callback    = callback;
+        this.policy      = policy;
+        this.orderingKey = (orderingKey == null || orderingKey.isEmpty()) ? null : orderingKey.split("\\.");
+        this.metrics     = metrics;
+
+        int count = Math.max(1, workerCount);
+        int laneSize = (int) Math.max(1, ((long) queueSize + count - 1) / count);
+        String fileName = name.replaceAll("[^A-Za-z0-9_-]", "_");
+        for(int i = 0; i < count; i++) {
+            SpillQueue spill = null;
+            if(policy == OverflowPolicy.SPILL) {
+                spill = new SpillQueue(spillDirectory, "vantiq-" + fileName + "-" + System.identityHashCode(this) + "-" + i);
+            }
+            this.lanes.add(new Lane(laneSize, spill));
+        }
+
+        this.workers = Executors.newFixedThreadPool(count, NamedThreadFactory.preferVirtual("vantiq-dispatch-" + name));
+        for(Lane lane : this.lanes) {
+            this.workers.execute(lane);
+        }
+        this.metrics.addQueue(this.queueDepth);
+    }
+
+    /**
+     * Queues an event for delivery to the flow.  Depending on the overflow
+     * policy, this may block until there is room in the queue or the
+     * dispatcher is closed.
+     *
+     * @param payload The event payload
+     */
+    public void dispatch(Object payload) {
+        if(this.closed) {
+            log.warn("Dispatcher for " + this.name + " is closed, dropping event");
+            this.metrics.dropped(1);
+            return;
+        }
+        selectLane(payload).offer(new Event(payload, System.currentTimeMillis()));
+    }
+
+    /**
+     * Stops accepting events and gives the workers a short time to deliver the
+     * queued events.  Events still queued afterwards are discarded.
+     */
+    public void close() {
+        this.closed = true;
+        for(Lane lane : this.lanes) {
+            lane.wake();
+        }
+        this.workers.shutdown();
+        try {
+            if(!this.workers.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Dispatcher for " + this.name + " closed with " + getQueueDepth() + " undelivered events");
+                this.workers.shutdownNow();
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.workers.shutdownNow();
+        }
+        for(Lane lane : this.lanes) {
+            lane.close();
+        }
+        this.metrics.removeQueue(this.queueDepth);
+    }
+
+    private Lane selectLane(Object payload) {
+        int count = this.lanes.size();
+        if(count == 1) {
+            return this.lanes.get(0);
+        }
+
+        Object key = (this.orderingKey != null) ? extractKey(payload) : null;
+        long hash = (key != null) ? key.hashCode() : this.roundRobin.getAndIncrement();
+        return this.lanes.get((int) ((hash & Long.MAX_VALUE) % count));
+    }
+
+    private Object extractKey(Object payload) {
+        Object current = payload;
+        for(String part : this.orderingKey) {
+            if(!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<?,?>) current).get(part);
+        }
+        return current;
+    }
+
+    //--------------------------------------------------------------------------
+    // Metrics
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of events waiting to be delivered, including spilled events
+     *
+     * @return The queue depth
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for(Lane lane : this.lanes) {
+            depth += lane.depth();
+        }
+        return depth;
+    }
+
+    //--------------------------------------------------------------------------
+    // Internals
+    //--------------------------------------------------------------------------
+
+    /**
+     * A queued event and the time it was received
+     */
+    private static class Event {
+
+        private final Object payload;
+        private final long receivedAt;
+
+        Event(Object payload, long receivedAt) {
+            this.payload = payload;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /**
+     * One bounded queue and the worker serving it
+     */
+    private class Lane implements Runnable {
+
+        private final BlockingQueue<Event> queue;
+        private final SpillQueue spill;
+
+        Lane(int size, SpillQueue spill) {
+            this.queue = new ArrayBlockingQueue<Event>(size);
+            this.spill = spill;
+        }
+
+        long depth() {
+            return this.queue.size() + (this.spill != null ? this.spill.size() : 0);
+        }
+
+        void offer(Event event) {
+            switch(policy) {
+                case BLOCK:
+                    try {
+                        // Wait in steps so that a close() is noticed even if the workers are stuck
+                        while(!this.queue.offer(event, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                            if(closed) {
+                                log.warn("Dispatcher for " + name + " closed while queueing event, dropping event");
+                                metrics.dropped(1);
+                                return;
+                            }
+                        }
+                    } catch(InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        log.warn("Interrupted queueing event for " + name + ", dropping event");
+                        metrics.dropped(1);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while(!this.queue.offer(event)) {
+                        if(this.queue.poll() != null) {
+                            metrics.dropped(1);
+                        }
+                    }
+                    break;
+                case SPILL:
+                    synchronized(this) {
+                        // Once events are spilled, later events must follow them to keep the order
+                        if(this.spill.size() == 0 && this.queue.offer(event)) {
+                            return;
+                        }
+                        try {
+                            JsonObject line = new JsonObject();
+                            line.addProperty("t", event.receivedAt);
+                            line.add("p", gson.toJsonTree(event.payload));
+                            this.spill.append(gson.toJson(line));
+                            metrics.spilled();
+                        } catch(IOException ex) {
+                            log.error("Unable to spill event for " + name + ", dropping event", ex);
+                            metrics.dropped(1);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(true) {
+                    // Spilled events only exist while the queue is full, so an idle
+                    // worker never waits with events left in the spill file
+                    if(this.spill != null) {
+                        refill();
+                    }
+                    if(closed && depth() == 0) {
+                        break;
+                    }
+                    Event event = this.queue.take();
+                    if(event != CLOSE) {
+                        deliver(event);
+                    }
+                }
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Wakes up the worker if it is waiting for an event.  If the queue is
+         * full the worker is not waiting and sees the close once it is drained.
+         */
+        void wake() {
+            this.queue.offer(CLOSE);
+        }
+
+        void close() {
+            if(this.spill != null) {
+                this.spill.close();
+            }
+        }
+
+        /**
+         * Moves spilled events back into the queue while there is room
+         */
+        private synchronized void refill() {
+            try {
+                while(this.queue.remainingCapacity() > 0) {
+                    String line = this.spill.poll();
+                    if(line == null) {
+                        break;
+                    }
+                    JsonObject entry = gson.fromJson(line, JsonObject.class);
+                    Object payload = gson.fromJson(entry.get("p"), Object.class);
+                    this.queue.offer(new Event(payload, entry.get("t").getAsLong()));
+                }
+            } catch(IOException ex) {
+                log.error("Unable to read spilled events for " + name + ", discarding spill file", ex);
+                metrics.dropped(this.spill.size());
+                this.spill.close();
+            }
+        }
+
+        private void deliver(Event event) {
+            metrics.dispatched(System.currentTimeMillis() - event.receivedAt);
+            try {
+                callback.process(event.payload);
+            } catch(Exception ex) {
+                metrics.failed();
+                log.error("Callback Error", ex);
+            }
+        }
+    }
+}
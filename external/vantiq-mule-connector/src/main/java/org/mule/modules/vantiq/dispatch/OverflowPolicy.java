@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.dispatch;
+
+/**
+ * Defines what happens to a subscription event when the dispatch queue
+ * of the subscription is full.
+ *
+ * @author Vantiq
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Blocks the WebSocket thread until there is room in the queue.  No events 
+     * are lost, but all subscriptions sharing the connection are slowed down.
+     */
+    BLOCK,
+
+    /**
+     * Drops the oldest queued event to make room for the new event.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Writes the event to a spill file on disk, which is read back once
+     * the queue has room.  No events are lost and the WebSocket thread is
+     * not blocked.
+     */
+    SPILL
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.dispatch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * A FIFO queue of text lines backed by files on disk.  New lines are appended
+ * to a write file.  When the lines read so far are exhausted, the write file is
+ * renamed to a read file and lines are read from it, while new lines go to a
+ * fresh write file.
+ *
+ * @author Vantiq
+ */
+class SpillQueue {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File writeFile;
+    private final File readFile;
+
+    private Writer writer;
+    private BufferedReader reader;
+    private long count = 0;
+
+    /**
+     * Creates a spill queue that uses files with the given base name
+     *
+     * @param directory The directory holding the spill files
+     * @param name The base name of the spill files
+     */
+    SpillQueue(File directory, String name) {
+        this.writeFile = new File(directory, name + ".spill");
+        this.readFile  = new File(directory, name + ".drain");
+    }
+
+    /**
+     * Returns the number of lines in the queue
+     *
+     * @return The number of lines
+     */
+    synchronized long size() {
+        return this.count;
+    }
+
+    /**
+     * Appends a line to the end of the queue
+     *
+     * @param line The line to append, which must not contain line breaks
+     * @throws IOException If the spill file cannot be written
+     */
+    synchronized void append(String line) throws IOException {
+        if(this.writer == null) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.writeFile, true), UTF8));
+        }
+        this.writer.write(line);
+        this.writer.write('\n');
+        this.count++;
+    }
+
+    /**
+     * Removes and returns the line at the head of the queue
+     *
+     * @return The line at the head or null if the queue is empty
+     * @throws IOException If the spill files cannot be read
+     */
+    synchronized String poll() throws IOException {
+        if(this.count == 0) {
+            return null;
+        }
+
+        if(this.reader != null) {
+            String line = this.reader.readLine();
+            if(line != null) {
+                this.count--;
+                return line;
+            }
+            closeReader();
+        }
+
+        // The read file is exhausted, so start reading the lines written since
+        this.writer.close();
+        this.writer = null;
+        if(!this.writeFile.renameTo(this.readFile)) {
+            throw new IOException("Unable to rename " + this.writeFile + " to " + this.readFile);
+        }
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.readFile), UTF8));
+
+        String line = this.reader.readLine();
+        if(line == null) {
+            throw new IOException("Spill file " + this.readFile + " is truncated");
+        }
+        this.count--;
+        return line;
+    }
+
+    /**
+     * Closes and removes the spill files, discarding any remaining lines
+     */
+    synchronized void close() {
+        try {
+            closeReader();
+            if(this.writer != null) {
+                this.writer.close();
+                this.writer = null;
+            }
+        } catch(IOException ex) {
+            // Files are removed regardless
+        }
+        this.writeFile.delete();
+        this.count = 0;
+    }
+
+    private void closeReader() throws IOException {
+        if(this.reader != null) {
+            this.reader.close();
+            this.reader = null;
+        }
+        this.readFile.delete();
+    }
+}
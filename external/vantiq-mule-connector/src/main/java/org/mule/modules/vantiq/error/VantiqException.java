@@ -32,13 +32,51 @@ public class VantiqException extends RuntimeException {
     
     private final VantiqResponse response;
     
+    private final int statusCode;
+    
     public VantiqException(VantiqResponse response) {
         super(response.toString(), response.getException());
         this.response = response;
+        this.statusCode = response.getStatusCode();
+    }
+    
+    /**
+     * Creates an exception for a request sent directly over HTTP rather than
+     * through the Vantiq SDK, so no SDK response is available.
+     * 
+     * @param statusCode The HTTP status code of the response
+     * @param message The error returned by Vantiq
+     */
+    public VantiqException(int statusCode, String message) {
+        super("HTTP " + statusCode + ": " + message);
+        this.response = null;
+        this.statusCode = statusCode;
     }
     
+    /**
+     * Creates a copy of the given exception, for a caller that shares the
+     * outcome of the request that failed.
+     * 
+     * @param cause The failure of the request
+     */
+    public VantiqException(VantiqException cause) {
+        super(cause.getMessage(), cause);
+        this.response = cause.response;
+        this.statusCode = cause.statusCode;
+    }
+    
+    /**
+     * Returns the SDK response, which is null if the request was not sent
+     * through the SDK.
+     * 
+     * @return The SDK response or null
+     */
     public VantiqResponse getResponse() {
         return response;
     }
     
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.error;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when records do not match the schema of their Vantiq data type.  The
+ * records are rejected before they are sent to Vantiq.
+ */
+public class VantiqValidationException extends RuntimeException {
+
+    private static final long serialVersionUID = 3861207730186318416L;
+
+    private static final int MAX_ERRORS_IN_MESSAGE = 10;
+
+    private final String dataType;
+    private final List<String> errors;
+
+    /**
+     * Creates an exception for the records of the given data type.  The message
+     * lists the first errors.
+     *
+     * @param dataType The Vantiq data type the records were checked against
+     * @param errors The problems found, one message per problem
+     */
+    public VantiqValidationException(String dataType, List<String> errors) {
+        super(buildMessage(dataType, errors));
+        this.dataType = dataType;
+        this.errors = Collections.unmodifiableList(new ArrayList<String>(errors));
+    }
+
+    /**
+     * Returns the data type the records were checked against
+     *
+     * @return The Vantiq data type name
+     */
+    public String getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Returns all problems found, including those left out of the message
+     *
+     * @return The unmodifiable list of error messages
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    private static String buildMessage(String dataType, List<String> errors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Invalid records for ").append(dataType).append(":");
+        int count = Math.min(errors.size(), MAX_ERRORS_IN_MESSAGE);
+        for(int i = 0; i < count; i++) {
+            sb.append("\n  ").append(errors.get(i));
+        }
+        if(errors.size() > count) {
+            sb.append("\n  ... and ").append(errors.size() - count).append(" more");
+        }
+        return sb.toString();
+    }
+}
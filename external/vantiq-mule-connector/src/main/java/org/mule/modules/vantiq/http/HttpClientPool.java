@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * Holds the HTTP connection pools used to reach Vantiq servers.  In shared
+ * mode, all connections to the same server use one pool of keep-alive
+ * connections and one limit on concurrent requests, so scaling out flows or
+ * reconnecting does not open a new set of connections each time.  Shared
+ * pools are reference counted and released once the last connection using
+ * them is closed.
+ *
+ * The pools are used by the HTTP clients that the connector creates itself,
+ * i.e. the client of the streaming publisher.  The Vantiq SDK does not accept
+ * an HTTP client, so SDK requests use the SDK's own connections.
+ *
+ * @author Vantiq
+ */
+public class HttpClientPool {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientPool.class);
+
+    private static final Map<String,Lease> shared = new HashMap<String,Lease>();
+
+    /**
+     * Acquires the connection pool for the given server.  Shared pools are
+     * created with the settings of the first connection to the server.
+     *
+     * @param server The Vantiq server URL
+     * @param share If true, the pool is shared with other connections to the same server
+     * @param maxIdleConnections The maximum number of idle keep-alive connections
+     * @param keepAlive The time in milliseconds an idle connection is kept open
+     * @param maxRequestsPerHost The maximum number of concurrent requests, 0 means no limit
+     * @return The lease on the pool, which must be released when no longer used
+     */
+    public static Lease acquire(String server, boolean share, int maxIdleConnections, long keepAlive, int maxRequestsPerHost) {
+        if(!share) {
+            return new Lease(null, maxIdleConnections, keepAlive, maxRequestsPerHost);
+        }
+
+        synchronized(shared) {
+            Lease lease = shared.get(server);
+            if(lease == null) {
+                lease = new Lease(server, maxIdleConnections, keepAlive, maxRequestsPerHost);
+                shared.put(server, lease);
+            } else if(lease.maxIdleConnections != maxIdleConnections || 
+                      lease.keepAlive != keepAlive || 
+                      lease.maxRequestsPerHost != maxRequestsPerHost) {
+                log.warn("Connection pool for " + server + " is shared and keeps the settings it was created with");
+            }
+            lease.references++;
+            return lease;
+        }
+    }
+
+    /**
+     * A lease on a connection pool
+     */
+    public static class Lease {
+
+        private final String server;
+        private final int maxIdleConnections;
+        private final long keepAlive;
+        private final int maxRequestsPerHost;
+        private final ConnectionPool connectionPool;
+        private final Dispatcher dispatcher;
+        private final Semaphore requestPermits;
+        private int references = 0;
+
+        Lease(String server, int maxIdleConnections, long keepAlive, int maxRequestsPerHost) {
+            this.server             = server;
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAlive          = keepAlive;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            this.connectionPool     = new ConnectionPool(Math.max(0, maxIdleConnections), Math.max(0, keepAlive), TimeUnit.MILLISECONDS);
+            this.dispatcher         = new Dispatcher();
+            if(maxRequestsPerHost > 0) {
+                this.dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+                this.requestPermits = new Semaphore(maxRequestsPerHost, true);
+            } else {
+                this.requestPermits = null;
+            }
+        }
+
+        /**
+         * Configures the given client builder to use this pool
+         *
+         * @param builder The client builder
+         * @param interceptors Additional interceptors for the client of this connection
+         * @return The builder
+         */
+        public OkHttpClient.Builder configure(OkHttpClient.Builder builder, Interceptor... interceptors) {
+            builder.connectionPool(this.connectionPool).dispatcher(this.dispatcher);
+            for(Interceptor interceptor : interceptors) {
+                builder.addInterceptor(interceptor);
+            }
+            if(this.requestPermits != null) {
+                // The dispatcher only limits asynchronous calls, so limit synchronous calls as well
+                builder.addInterceptor(new Interceptor() {
+                    @Override public Response intercept(Chain chain) throws IOException {
+                        try {
+                            requestPermits.acquire();
+                        } catch(InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted waiting for a request slot");
+                        }
+                        try {
+                            return chain.proceed(chain.request());
+                        } finally {
+                            requestPermits.release();
+                        }
+                    }
+                });
+            }
+            return builder;
+        }
+
+        /**
+         * Returns the lease.  A private pool, or the last lease on a shared pool,
+         * closes the idle connections.
+         */
+        public void release() {
+            if(this.server != null) {
+                synchronized(shared) {
+                    if(--this.references > 0) {
+                        return;
+                    }
+                    shared.remove(this.server);
+                }
+            }
+            this.connectionPool.evictAll();
+        }
+    }
+}
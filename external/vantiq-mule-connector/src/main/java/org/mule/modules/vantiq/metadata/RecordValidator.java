@@ -0,0 +1,406 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metadata;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.mule.modules.vantiq.error.VantiqValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks and normalizes records against the schema of a Vantiq data type before
+ * they are sent to Vantiq.  The schema is compiled once into a table of field
+ * rules, which is then applied to each record:
+ * <ul>
+ *   <li>System fields (and <code>_id</code>) are dropped</li>
+ *   <li>Values are checked against the property type and converted where the
+ *       conversion is lossless, e.g. a <code>java.util.Date</code> to an ISO-8601
+ *       DateTime string, or a numeric string to a Decimal.  DateTime strings must
+ *       be ISO-8601 with a time zone, e.g. <code>2016-01-31T12:00:00Z</code></li>
+ *   <li>Required properties must be present</li>
+ * </ul>
+ * Properties that are not defined by the schema are passed through unchanged.
+ * Values already of the expected type are passed through without copying.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Vantiq
+ */
+public class RecordValidator {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordValidator.class);
+
+    private static final ThreadLocal<DateFormat> ISO_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    /**
+     * The Vantiq property types
+     */
+    private enum FieldType {
+        STRING("String"), DATE_TIME("DateTime"), BOOLEAN("Boolean"), REAL("Real"),
+        INTEGER("Integer"), DECIMAL("Decimal"), OBJECT("Object"), UNKNOWN("any value");
+
+        private final String label;
+
+        FieldType(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * The rule for a single property
+     */
+    private static class FieldRule {
+
+        private final FieldType type;
+        private final boolean system;
+
+        FieldRule(FieldType type, boolean system) {
+            this.type = type;
+            this.system = system;
+        }
+    }
+
+    private final String dataType;
+    private final Map<String,FieldRule> rules;
+    private final String[] required;
+
+    private RecordValidator(String dataType, Map<String,FieldRule> rules, String[] required) {
+        this.dataType = dataType;
+        this.rules = rules;
+        this.required = required;
+    }
+
+    /**
+     * Compiles the validator for a Vantiq data type schema
+     *
+     * @param id The name of the data type
+     * @param dataType The Vantiq data type schema (ArsType)
+     * @return The validator for the data type
+     */
+    public static RecordValidator compile(String id, JsonObject dataType) {
+        Map<String,FieldRule> rules = new HashMap<String,FieldRule>();
+        rules.put("_id", new FieldRule(FieldType.UNKNOWN, true));
+
+        JsonObject properties = dataType.getAsJsonObject("properties");
+        Set<String> systemProps = new HashSet<String>();
+        for(Map.Entry<String, JsonElement> entry : properties.entrySet()) {
+            String        prop = entry.getKey();
+            JsonObject propDef = entry.getValue().getAsJsonObject();
+            String        type = propDef.get("type").getAsString();
+            boolean     system = propDef.get("system") != null && propDef.get("system").getAsBoolean();
+            if(system) {
+                systemProps.add(prop);
+            }
+
+            rules.put(prop, new FieldRule(toFieldType(id, prop, type), system));
+        }
+
+        List<String> required = new ArrayList<String>();
+        JsonElement requiredDef = dataType.get("required");
+        if(requiredDef != null && requiredDef.isJsonArray()) {
+            for(JsonElement element : (JsonArray) requiredDef) {
+                String prop = element.getAsString();
+                if(!systemProps.contains(prop)) {
+                    required.add(prop);
+                }
+            }
+        }
+
+        return new RecordValidator(id, rules, required.toArray(new String[required.size()]));
+    }
+
+    private static FieldType toFieldType(String id, String prop, String type) {
+        switch(type) {
+            case "String":
+            case "Currency":
+                return FieldType.STRING;
+            case "DateTime":
+                return FieldType.DATE_TIME;
+            case "Boolean":
+                return FieldType.BOOLEAN;
+            case "Real":
+                return FieldType.REAL;
+            case "Integer":
+                return FieldType.INTEGER;
+            case "Decimal":
+                return FieldType.DECIMAL;
+            case "Object":
+            case "GeoJSON":
+                return FieldType.OBJECT;
+            default:
+                // Unknown types are passed through unchecked
+                log.warn("Unknown data type: " + prop + " in " + id);
+                return FieldType.UNKNOWN;
+        }
+    }
+
+    /**
+     * Returns the name of the data type of this validator
+     *
+     * @return The data type name
+     */
+    public String getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Normalizes a single record.
+     *
+     * @param record The record to check
+     * @return The normalized record
+     * @throws VantiqValidationException If the record does not match the schema
+     */
+    public Map<String,Object> normalize(Object record) {
+        List<String> errors = new ArrayList<String>();
+        Map<String,Object> result = normalize(record, -1, errors);
+        if(result == null) {
+            throw new VantiqValidationException(this.dataType, errors);
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes a list of records.  All records are checked before any
+     * error is reported.
+     *
+     * @param records The records to check
+     * @return The normalized records, in the same order
+     * @throws VantiqValidationException If the list is null or any record does not match the schema
+     */
+    public List<Map<String,Object>> normalizeAll(List<?> records) {
+        if(records == null) {
+            throw new VantiqValidationException(this.dataType, Collections.singletonList("expected a list of records but got null"));
+        }
+        List<String> errors = new ArrayList<String>();
+        List<Map<String,Object>> result = new ArrayList<Map<String,Object>>(records.size());
+        for(int i = 0; i < records.size(); i++) {
+            result.add(normalize(records.get(i), i, errors));
+        }
+        if(!errors.isEmpty()) {
+            throw new VantiqValidationException(this.dataType, errors);
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes a record, adding a message to the errors for each problem found.
+     *
+     * @param record The record to check
+     * @param index The index of the record in the input used in the error messages,
+     *              or -1 for a single record
+     * @param errors The list receiving the error messages
+     * @return The normalized record or null if the record is invalid
+     */
+    public Map<String,Object> normalize(Object record, long index, List<String> errors) {
+        if(!(record instanceof Map)) {
+            errors.add(label(index) + ": expected a map of properties but got " + describe(record));
+            return null;
+        }
+
+        Map<?,?> source = (Map<?,?>) record;
+        Map<String,Object> result = new LinkedHashMap<String,Object>(source.size() * 4 / 3 + 1);
+        boolean valid = true;
+        for(Map.Entry<?,?> entry : source.entrySet()) {
+            String prop = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            FieldRule rule = this.rules.get(prop);
+
+            if(rule != null && rule.system) {
+                continue;
+            }
+            if(rule == null || value == null) {
+                result.put(prop, value);
+                continue;
+            }
+
+            Object coerced = coerce(rule.type, value);
+            if(coerced == null) {
+                errors.add(label(index) + ": property '" + prop + "' expects " + rule.type.label + " but got " + describe(value));
+                valid = false;
+            } else {
+                result.put(prop, coerced);
+            }
+        }
+
+        for(String prop : this.required) {
+            if(source.get(prop) == null) {
+                errors.add(label(index) + ": required property '" + prop + "' is missing");
+                valid = false;
+            }
+        }
+
+        return valid ? result : null;
+    }
+
+    /**
+     * Returns the label of a record in the error messages.  Only called once a
+     * record has failed, so valid records do not build a label.
+     */
+    private static String label(long index) {
+        return (index < 0) ? "record" : "record " + index;
+    }
+
+    /**
+     * Converts the value to the representation expected by Vantiq
+     *
+     * @return The converted value or null if the value cannot be converted
+     */
+    private static Object coerce(FieldType type, Object value) {
+        switch(type) {
+            case STRING:
+                if(value instanceof String) {
+                    return value;
+                } else if(value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+                    return value.toString();
+                }
+                return null;
+
+            case DATE_TIME:
+                if(value instanceof String) {
+                    return isDateTime((String) value) ? value : null;
+                } else if(value instanceof Date) {
+                    return ISO_FORMAT.get().format((Date) value);
+                } else if(value instanceof Calendar) {
+                    return ISO_FORMAT.get().format(((Calendar) value).getTime());
+                } else if(value instanceof Long || value instanceof Integer) {
+                    // Epoch milliseconds
+                    return ISO_FORMAT.get().format(new Date(((Number) value).longValue()));
+                }
+                return null;
+
+            case BOOLEAN:
+                if(value instanceof Boolean) {
+                    return value;
+                } else if("true".equalsIgnoreCase(value.toString()) || "false".equalsIgnoreCase(value.toString())) {
+                    return Boolean.valueOf(value.toString());
+                }
+                return null;
+
+            case REAL:
+                if(value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer) {
+                    return value;
+                } else if(value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                }
+                return parseDouble(value);
+
+            case INTEGER:
+                if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    return value;
+                } else if(value instanceof BigInteger) {
+                    return ((BigInteger) value).bitLength() < 64 ? ((BigInteger) value).longValue() : null;
+                } else if(value instanceof Number) {
+                    // Only whole numbers within the range of a long, e.g. 3.0 parsed from JSON
+                    double d = ((Number) value).doubleValue();
+                    return (d == Math.rint(d) && Math.abs(d) < 0x1p63) ? (Object) (long) d : null;
+                }
+                return parseLong(value);
+
+            case DECIMAL:
+                if(value instanceof BigDecimal) {
+                    return value;
+                } else if(value instanceof Number || value instanceof CharSequence) {
+                    try {
+                        return new BigDecimal(value.toString());
+                    } catch(NumberFormatException ex) {
+                        return null;
+                    }
+                }
+                return null;
+
+            case OBJECT:
+                return (value instanceof Map || value instanceof JsonObject) ? value : null;
+
+            default:
+                return value;
+        }
+    }
+
+    private static boolean isDateTime(String value) {
+        try {
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(value);
+            return true;
+        } catch(DateTimeParseException ex) {
+            return false;
+        }
+    }
+
+    private static Object parseDouble(Object value) {
+        if(value instanceof CharSequence) {
+            try {
+                return Double.valueOf(value.toString());
+            } catch(NumberFormatException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Object parseLong(Object value) {
+        if(value instanceof CharSequence) {
+            try {
+                return Long.valueOf(value.toString());
+            } catch(NumberFormatException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String describe(Object value) {
+        if(value == null) {
+            return "null";
+        }
+        String text = String.valueOf(value);
+        if(text.length() > 40) {
+            text = text.substring(0, 40) + "...";
+        }
+        return value.getClass().getSimpleName() + " '" + text + "'";
+    }
+}
@@ -0,0 +1,473 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metadata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.mule.common.metadata.MetaData;
+import org.mule.modules.vantiq.VantiqDataSenseResolver;
+import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.subscription.SubscriptionRegistry;
+import org.mule.modules.vantiq.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import io.vantiq.client.SubscriptionCallback;
+import io.vantiq.client.SubscriptionMessage;
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.Vantiq.TypeOperation;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Caches the Vantiq data type schemas and the DataSense metadata and record
+ * validators built from them, so that design-time and runtime lookups do not query Vantiq every time.
+ *
+ * Entries expire after a time-to-live and the least recently used entries are
+ * evicted once the cache is full.  Each entry records the version of the type
+ * (<code>ars_version</code>, or <code>ars_modifiedAt</code> if there is no version),
+ * and entries whose version has changed are evicted whenever the list of types
+ * is refreshed.  Optionally, the cache subscribes to changes of the type
+ * definitions and evicts a type as soon as it is changed.
+ *
+ * Concurrent lookups of a type that is not cached share a single request to
+ * Vantiq.
+ *
+ * @author Vantiq
+ */
+public class TypeMetadataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TypeMetadataCache.class);
+
+    /**
+     * The Vantiq data type of the type definitions, used to listen for changes
+     */
+    private static final String TYPE_DEFINITION_TYPE = "ArsType";
+
+    private static final TypeOperation[] TYPE_CHANGES = { TypeOperation.INSERT, TypeOperation.UPDATE, TypeOperation.DELETE };
+
+    private final Vantiq vantiq;
+    private final SubscriptionRegistry registry;
+    private final long ttl;
+    private final boolean subscribeToChanges;
+
+    private final Map<String,Entry> entries;
+    private final Map<String,Load> loads = new HashMap<String,Load>();
+    private List<String> typeNames;
+    private long typeNamesLoadedAt;
+
+    private final List<SubscriptionRegistry.Subscription> subscriptions = new ArrayList<SubscriptionRegistry.Subscription>();
+    private ExecutorService prewarmPool;
+    private boolean closed = false;
+
+    /**
+     * Creates a cache.
+     *
+     * @param vantiq The Vantiq SDK instance used to query the types
+     * @param registry The subscription registry used to listen for type changes
+     * @param ttl The time in milliseconds after which an entry is reloaded
+     * @param maxEntries The maximum number of types held in the cache
+     * @param subscribeToChanges If true, evict types as soon as they are changed in Vantiq
+     */
+    public TypeMetadataCache(Vantiq vantiq,
+                             SubscriptionRegistry registry,
+                             long ttl,
+                             final int maxEntries,
+                             boolean subscribeToChanges) {
+        this.vantiq             = vantiq;
+        this.registry           = registry;
+        this.ttl                = ttl;
+        this.subscribeToChanges = subscribeToChanges;
+
+        // Access ordered, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+                return size() > Math.max(1, maxEntries);
+            }
+        };
+    }
+
+    /**
+     * Returns the names of all data types in Vantiq.  Cached schemas whose
+     * version differs from the version in the list are evicted.
+     *
+     * @return The data type names
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getTypeNames() {
+        synchronized(this) {
+            if(this.typeNames != null && !isExpired(this.typeNamesLoadedAt)) {
+                return new ArrayList<String>(this.typeNames);
+            }
+        }
+
+        List<String> props = new ArrayList<String>();
+        props.add("name");
+        props.add("ars_version");
+        props.add("ars_modifiedAt");
+        VantiqResponse response = this.vantiq.select(Vantiq.SystemResources.TYPES.value(), props, null, null);
+        if(!response.isSuccess()) {
+            throw new VantiqException(response);
+        }
+
+        List<String> names = new ArrayList<String>();
+        synchronized(this) {
+            for(JsonObject type : (List<JsonObject>) response.getBody()) {
+                String name = type.get("name").getAsString();
+                names.add(name);
+
+                Entry entry = this.entries.get(name);
+                if(entry != null && !entry.version.equals(getVersion(type))) {
+                    log.debug("Type " + name + " changed, evicting cached schema");
+                    this.entries.remove(name);
+                }
+            }
+            this.typeNames = names;
+            this.typeNamesLoadedAt = System.currentTimeMillis();
+        }
+        subscribeToChanges();
+        return new ArrayList<String>(names);
+    }
+
+    /**
+     * Returns the DataSense metadata of the given data type
+     *
+     * @param typeName The data type name
+     * @return The metadata built from the data type schema
+     */
+    public MetaData getMetaData(String typeName) {
+        Entry entry = getEntry(typeName);
+        synchronized(entry) {
+            if(entry.metaData == null) {
+                entry.metaData = VantiqDataSenseResolver.buildMetaData(typeName, entry.schema);
+            }
+            return entry.metaData;
+        }
+    }
+
+    /**
+     * Returns the validator compiled from the schema of the given data type
+     *
+     * @param typeName The data type name
+     * @return The record validator for the data type
+     */
+    public RecordValidator getValidator(String typeName) {
+        Entry entry = getEntry(typeName);
+        synchronized(entry) {
+            if(entry.validator == null) {
+                entry.validator = RecordValidator.compile(typeName, entry.schema);
+            }
+            return entry.validator;
+        }
+    }
+
+    /**
+     * Loads the schemas of all data types in the background, using up to the
+     * given number of concurrent requests.
+     *
+     * @param concurrency The maximum number of concurrent requests
+     */
+    public void prewarm(final int concurrency) {
+        synchronized(this) {
+            if(this.closed || this.prewarmPool != null) {
+                return;
+            }
+            this.prewarmPool = Executors.newFixedThreadPool(Math.max(1, concurrency) + 1,
+                                                            new NamedThreadFactory("vantiq-metadata-prewarm"));
+        }
+
+        final ExecutorService pool = this.prewarmPool;
+        pool.execute(new Runnable() {
+            @Override public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    List<String> names = getTypeNames();
+                    final Semaphore permits = new Semaphore(Math.max(1, concurrency));
+                    for(final String name : names) {
+                        permits.acquire();
+                        pool.execute(new Runnable() {
+                            @Override public void run() {
+                                try {
+                                    getMetaData(name);
+                                } catch(RuntimeException ex) {
+                                    log.warn("Unable to prewarm metadata for " + name, ex);
+                                } finally {
+                                    permits.release();
+                                }
+                            }
+                        });
+                    }
+                    permits.acquire(Math.max(1, concurrency));
+                    log.debug("Prewarmed metadata for " + names.size() + " types in " + 
+                              (System.currentTimeMillis() - start) + " ms");
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch(RuntimeException ex) {
+                    log.warn("Unable to prewarm metadata", ex);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Evicts the given data type from the cache
+     *
+     * @param typeName The data type name
+     */
+    public synchronized void invalidate(String typeName) {
+        this.entries.remove(typeName);
+        this.loads.remove(typeName);
+        this.typeNames = null;
+    }
+
+    /**
+     * Evicts all data types from the cache
+     */
+    public synchronized void invalidateAll() {
+        this.entries.clear();
+        this.loads.clear();
+        this.typeNames = null;
+    }
+
+    /**
+     * Stops listening for type changes and stops any prewarming
+     */
+    public void close() {
+        List<SubscriptionRegistry.Subscription> subs;
+        synchronized(this) {
+            this.closed = true;
+            subs = new ArrayList<SubscriptionRegistry.Subscription>(this.subscriptions);
+            this.subscriptions.clear();
+            if(this.prewarmPool != null) {
+                this.prewarmPool.shutdownNow();
+            }
+            this.entries.clear();
+            this.loads.clear();
+        }
+        for(SubscriptionRegistry.Subscription sub : subs) {
+            sub.unsubscribe();
+        }
+    }
+
+    private Entry getEntry(String typeName) {
+        Load load;
+        boolean loader = false;
+        synchronized(this) {
+            Entry entry = this.entries.get(typeName);
+            if(entry != null && !isExpired(entry.loadedAt)) {
+                return entry;
+            }
+
+            load = this.loads.get(typeName);
+            if(load == null) {
+                load = new Load(typeName);
+                this.loads.put(typeName, load);
+                loader = true;
+            }
+        }
+
+        if(loader) {
+            load.run();
+            subscribeToChanges();
+        }
+        return load.getEntry(loader);
+    }
+
+    private Entry load(String typeName) {
+        VantiqResponse response = this.vantiq.selectOne(Vantiq.SystemResources.TYPES.value(), typeName);
+        if(!response.isSuccess()) {
+            throw new VantiqException(response);
+        }
+        JsonObject schema = (JsonObject) response.getBody();
+        return new Entry(schema, getVersion(schema));
+    }
+
+    private boolean isExpired(long loadedAt) {
+        return this.ttl > 0 && System.currentTimeMillis() - loadedAt > this.ttl;
+    }
+
+    /**
+     * Subscribes to type definition changes the first time the cache is filled
+     */
+    private void subscribeToChanges() {
+        synchronized(this) {
+            if(!this.subscribeToChanges || this.closed || !this.subscriptions.isEmpty()) {
+                return;
+            }
+
+            SubscriptionCallback listener = new ChangeListener();
+            for(TypeOperation op : TYPE_CHANGES) {
+                this.subscriptions.add(this.registry.subscribe(Vantiq.SystemResources.TYPES, TYPE_DEFINITION_TYPE, op, listener));
+            }
+        }
+    }
+
+    private static String getVersion(JsonObject type) {
+        JsonElement version = type.get("ars_version");
+        if(version == null || version.isJsonNull()) {
+            version = type.get("ars_modifiedAt");
+        }
+        return (version == null || version.isJsonNull()) ? "" : version.getAsString();
+    }
+
+    /**
+     * A cached data type schema
+     */
+    private static class Entry {
+
+        private final JsonObject schema;
+        private final String version;
+        private final long loadedAt = System.currentTimeMillis();
+        private MetaData metaData;
+        private RecordValidator validator;
+
+        Entry(JsonObject schema, String version) {
+            this.schema = schema;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A pending load of a data type schema, shared by the lookups that miss
+     * the cache while it is running.  The lookup that created it runs it.
+     */
+    private class Load extends FutureTask<Entry> {
+
+        private final String typeName;
+
+        Load(final String typeName) {
+            super(new Callable<Entry>() {
+                @Override public Entry call() {
+                    return load(typeName);
+                }
+            });
+            this.typeName = typeName;
+        }
+
+        @Override
+        protected void set(Entry entry) {
+            synchronized(TypeMetadataCache.this) {
+                // A type invalidated while it was loading is not cached
+                if(loads.get(this.typeName) == this) {
+                    loads.remove(this.typeName);
+                    if(!closed) {
+                        entries.put(this.typeName, entry);
+                    }
+                }
+            }
+            super.set(entry);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            synchronized(TypeMetadataCache.this) {
+                if(loads.get(this.typeName) == this) {
+                    loads.remove(this.typeName);
+                }
+            }
+            super.setException(t);
+        }
+
+        /**
+         * Waits for the load to complete
+         *
+         * @param loader True for the lookup that ran the load
+         * @return The loaded entry
+         */
+        Entry getEntry(boolean loader) {
+            try {
+                return get();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted loading data type " + this.typeName, ex);
+            } catch(ExecutionException ex) {
+                // The failure is shared with other lookups, so each waiting lookup gets its own exception
+                Throwable cause = ex.getCause();
+                if(cause instanceof VantiqException) {
+                    throw loader ? (VantiqException) cause : new VantiqException((VantiqException) cause);
+                } else if(cause instanceof RuntimeException && loader) {
+                    throw (RuntimeException) cause;
+                } else if(cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Unable to load data type " + this.typeName, cause);
+            }
+        }
+    }
+
+    /**
+     * Evicts types as they are changed in Vantiq
+     */
+    private class ChangeListener implements SubscriptionCallback {
+
+        @Override public void onConnect() {
+            log.debug("Listening for data type changes");
+        }
+
+        @Override public void onMessage(SubscriptionMessage message) {
+            String name = getChangedTypeName(message.getBody());
+            if(name != null) {
+                log.debug("Type " + name + " changed, evicting cached schema");
+                invalidate(name);
+            } else {
+                invalidateAll();
+            }
+        }
+
+        @Override public void onError(String error) {
+            log.warn("Data type change subscription error: " + error);
+        }
+
+        @Override public void onFailure(Throwable t) {
+            // Changes may be missed until resubscribed, so start over
+            invalidateAll();
+        }
+
+        private String getChangedTypeName(Object body) {
+            if(body instanceof Map) {
+                Object value = ((Map<?,?>) body).get("value");
+                if(value instanceof Map) {
+                    Object name = ((Map<?,?>) value).get("name");
+                    return (name != null) ? name.toString() : null;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The metrics of all connections of a user to a Vantiq server.  Mule may
+ * open several connections for the same configuration, so the metrics are
+ * shared by all connections with the same server and username and released
+ * once the last of them is closed.
+ *
+ * The metrics are registered as MXBeans in the platform MBean server under
+ * the <code>org.mule.modules.vantiq</code> domain:
+ * <ul>
+ *   <li><code>type=Http,connection=...</code>: HTTP requests, statuses and bytes</li>
+ *   <li><code>type=Operation,connection=...,name=...</code>: latency, throughput and
+ *       failures of each processor and polling source</li>
+ *   <li><code>type=Subscription,connection=...,name=...</code>: event rates of
+ *       each subscription</li>
+ * </ul>
+ *
+ * @author Vantiq
+ */
+public class ConnectorMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectorMetrics.class);
+
+    private static final String DOMAIN = "org.mule.modules.vantiq";
+
+    private static final Map<String,ConnectorMetrics> shared = new HashMap<String,ConnectorMetrics>();
+
+    private final String key;
+    private final boolean jmx;
+    private final HttpMetrics http = new HttpMetrics();
+    private final ConcurrentMap<String,OperationMetrics> operations = new ConcurrentHashMap<String,OperationMetrics>();
+    private final ConcurrentMap<String,SubscriptionMetrics> subscriptions = new ConcurrentHashMap<String,SubscriptionMetrics>();
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private int references = 0;
+
+    private ConnectorMetrics(String key, boolean jmx) {
+        this.key = key;
+        this.jmx = jmx;
+        register(name("Http", null), this.http);
+    }
+
+    /**
+     * Acquires the metrics for the given user and server.
+     *
+     * @param server The Vantiq server URL
+     * @param username The Vantiq username
+     * @param jmx If true, the metrics are registered in the platform MBean server
+     * @return The metrics, which must be released when the connection is closed
+     */
+    public static ConnectorMetrics acquire(String server, String username, boolean jmx) {
+        String key = username + "@" + server;
+        synchronized(shared) {
+            ConnectorMetrics metrics = shared.get(key);
+            if(metrics == null) {
+                metrics = new ConnectorMetrics(key, jmx);
+                shared.put(key, metrics);
+            }
+            metrics.references++;
+            return metrics;
+        }
+    }
+
+    /**
+     * Returns the HTTP metrics
+     *
+     * @return The HTTP metrics
+     */
+    public HttpMetrics getHttp() {
+        return this.http;
+    }
+
+    /**
+     * Returns the metrics of the given operation, creating them on first use
+     *
+     * @param name The name of the processor or source
+     * @return The operation metrics
+     */
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = this.operations.get(name);
+        if(metrics == null) {
+            OperationMetrics created = new OperationMetrics();
+            metrics = this.operations.putIfAbsent(name, created);
+            if(metrics == null) {
+                metrics = created;
+                register(name("Operation", name), metrics);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of the given subscription, creating them on first use
+     *
+     * @param path The path of the subscription, e.g. "topics//my/topic"
+     * @return The subscription metrics
+     */
+    public SubscriptionMetrics subscription(String path) {
+        SubscriptionMetrics metrics = this.subscriptions.get(path);
+        if(metrics == null) {
+            SubscriptionMetrics created = new SubscriptionMetrics();
+            metrics = this.subscriptions.putIfAbsent(path, created);
+            if(metrics == null) {
+                metrics = created;
+                register(name("Subscription", path), metrics);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics.  The last release unregisters the MBeans.
+     */
+    public void release() {
+        synchronized(shared) {
+            if(--this.references > 0) {
+                return;
+            }
+            shared.remove(this.key);
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized(this.registered) {
+            for(ObjectName name : this.registered) {
+                try {
+                    server.unregisterMBean(name);
+                } catch(Exception ex) {
+                    log.debug("Unable to unregister " + name, ex);
+                }
+            }
+            this.registered.clear();
+        }
+    }
+
+    private ObjectName name(String type, String name) {
+        StringBuilder sb = new StringBuilder(DOMAIN);
+        sb.append(":type=").append(type);
+        sb.append(",connection=").append(ObjectName.quote(this.key));
+        if(name != null) {
+            sb.append(",name=").append(ObjectName.quote(name));
+        }
+        try {
+            return new ObjectName(sb.toString());
+        } catch(Exception ex) {
+            throw new IllegalArgumentException("Invalid MBean name " + sb, ex);
+        }
+    }
+
+    private void register(ObjectName name, Object mbean) {
+        if(!this.jmx) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+            synchronized(this.registered) {
+                this.registered.add(name);
+            }
+        } catch(Exception ex) {
+            log.warn("Unable to register metrics MBean " + name + ": " + ex);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.modules.vantiq.publish.PayloadBody;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * The metrics of the HTTP requests sent to Vantiq.  The requests are observed
+ * by an OkHttp interceptor added to the HTTP clients of the connection.
+ * Received bytes are counted as the response bodies are read, after any
+ * decompression, so responses without a Content-Length are included.
+ *
+ * @author Vantiq
+ */
+public class HttpMetrics implements HttpMetricsMXBean {
+
+    private final LongAdder requests = new LongAdder();
+    private final RateMeter requestRate = new RateMeter();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final ConcurrentMap<Integer,LongAdder> responsesByStatus = new ConcurrentHashMap<Integer,LongAdder>();
+
+    private final Interceptor interceptor = new Interceptor() {
+        @Override public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            recordExchange(request, response);
+            ResponseBody body = response.body();
+            return (body != null) ? response.newBuilder().body(new CountingBody(body)).build() : response;
+        }
+    };
+
+    /**
+     * Returns the interceptor that records the requests of an HTTP client
+     *
+     * @return The interceptor
+     */
+    public Interceptor getInterceptor() {
+        return this.interceptor;
+    }
+
+    private void recordExchange(Request request, Response response) throws IOException {
+        this.requests.increment();
+        this.requestRate.mark(1);
+
+        RequestBody body = request.body();
+        if(body instanceof PayloadBody) {
+            // Streamed bodies have no length until written
+            this.bytesSent.add(((PayloadBody) body).getBytesWritten());
+        } else if(body != null && body.contentLength() > 0) {
+            this.bytesSent.add(body.contentLength());
+        }
+
+        LongAdder counter = this.responsesByStatus.get(response.code());
+        if(counter == null) {
+            LongAdder created = new LongAdder();
+            counter = this.responsesByStatus.putIfAbsent(response.code(), created);
+            if(counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * A response body that counts the bytes read from it
+     */
+    private class CountingBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        CountingBody(ResponseBody delegate) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if(read > 0) {
+                        bytesReceived.add(read);
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return this.delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return this.delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return this.source;
+        }
+    }
+
+    @Override
+    public long getRequestCount() {
+        return this.requests.sum();
+    }
+
+    @Override
+    public double getRequestRate() {
+        return this.requestRate.getRate();
+    }
+
+    @Override
+    public Map<String,Long> getResponsesByStatus() {
+        Map<String,Long> result = new TreeMap<String,Long>();
+        for(Map.Entry<Integer,LongAdder> entry : this.responsesByStatus.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public long getBytesSent() {
+        return this.bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return this.bytesReceived.sum();
+    }
+}
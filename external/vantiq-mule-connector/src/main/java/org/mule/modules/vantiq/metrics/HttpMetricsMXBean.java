@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the HTTP traffic to Vantiq
+ *
+ * @author Vantiq
+ */
+public interface HttpMetricsMXBean {
+
+    /**
+     * Returns the number of HTTP requests sent
+     *
+     * @return The request count
+     */
+    long getRequestCount();
+
+    /**
+     * Returns the HTTP requests per second over the last minute
+     *
+     * @return Requests per second
+     */
+    double getRequestRate();
+
+    /**
+     * Returns the number of responses by HTTP status code
+     *
+     * @return Response counts by status code
+     */
+    Map<String,Long> getResponsesByStatus();
+
+    /**
+     * Returns the number of payload bytes sent in request bodies, before
+     * any compression
+     *
+     * @return Bytes sent
+     */
+    long getBytesSent();
+
+    /**
+     * Returns the number of bytes received in response bodies of known length
+     *
+     * @return Bytes received
+     */
+    long getBytesReceived();
+}
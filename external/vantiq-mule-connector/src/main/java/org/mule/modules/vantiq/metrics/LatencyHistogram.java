@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies.  Latencies are counted in buckets whose
+ * upper bounds are powers of two microseconds, from 1 microsecond to about
+ * 67 seconds, so percentiles are reported with at most a factor of two error
+ * while recording costs a single atomic increment.
+ *
+ * @author Vantiq
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 28;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a latency
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(1, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+        this.counts.incrementAndGet(bucket);
+        this.count.increment();
+        this.totalNanos.add(nanos);
+
+        long max = this.maxNanos.get();
+        while(nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the number of latencies recorded
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the mean latency
+     *
+     * @return The mean latency in milliseconds
+     */
+    public double getMeanMillis() {
+        long n = this.count.sum();
+        return (n == 0) ? 0 : this.totalNanos.sum() / (n * 1e6);
+    }
+
+    /**
+     * Returns the maximum latency
+     *
+     * @return The maximum latency in milliseconds
+     */
+    public double getMaxMillis() {
+        return this.maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the latency below which the given fraction of latencies fall,
+     * as the upper bound of the bucket holding that percentile.
+     *
+     * @param fraction The fraction, e.g. 0.99 for the 99th percentile
+     * @return The percentile latency in milliseconds
+     */
+    public double getPercentileMillis(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= target) {
+                return Math.min((1L << i) / 1e3, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.error.VantiqValidationException;
+
+/**
+ * The metrics of a single connector operation, i.e. a processor or a polling
+ * source: the latency of each invocation, the throughput over the last minute
+ * and the failures by cause.
+ *
+ * @author Vantiq
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final RateMeter throughput = new RateMeter();
+    private final LongAdder errors = new LongAdder();
+    private final ConcurrentMap<String,LongAdder> errorsByStatus = new ConcurrentHashMap<String,LongAdder>();
+
+    /**
+     * Starts timing an invocation of the operation.  Each invocation allocates
+     * one small sample object; recording the sample does not allocate or lock.
+     *
+     * @return The sample, which must be stopped once the invocation completes
+     */
+    public Sample start() {
+        return new Sample();
+    }
+
+    /**
+     * Records a failure of the operation.  Failures are keyed by the HTTP status
+     * code of the response, "validation" for rejected payloads, "network" if the
+     * failure was caused by an I/O error and "other" for anything else.
+     *
+     * @param failure The exception thrown by the operation
+     */
+    public void failed(Throwable failure) {
+        String status;
+        if(failure instanceof VantiqValidationException) {
+            status = "validation";
+        } else if(failure instanceof VantiqException && ((VantiqException) failure).getStatusCode() > 0) {
+            status = String.valueOf(((VantiqException) failure).getStatusCode());
+        } else if(isIOFailure(failure)) {
+            status = "network";
+        } else {
+            status = "other";
+        }
+
+        this.errors.increment();
+        LongAdder counter = this.errorsByStatus.get(status);
+        if(counter == null) {
+            LongAdder created = new LongAdder();
+            counter = this.errorsByStatus.putIfAbsent(status, created);
+            if(counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * Checks whether the failure was caused by an I/O error.  The Vantiq SDK
+     * reports a request that got no response as a VantiqException without a
+     * status code, with the I/O error as its cause.
+     */
+    private static boolean isIOFailure(Throwable failure) {
+        for(Throwable t = failure; t != null; t = (t.getCause() != t) ? t.getCause() : null) {
+            if(t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getCount() {
+        return this.latency.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return this.errors.sum();
+    }
+
+    @Override
+    public Map<String,Long> getErrorsByStatus() {
+        Map<String,Long> result = new TreeMap<String,Long>();
+        for(Map.Entry<String,LongAdder> entry : this.errorsByStatus.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public double getThroughput() {
+        return this.throughput.getRate();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return this.latency.getMeanMillis();
+    }
+
+    @Override
+    public double getLatency50thMillis() {
+        return this.latency.getPercentileMillis(0.50);
+    }
+
+    @Override
+    public double getLatency95thMillis() {
+        return this.latency.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getLatency99thMillis() {
+        return this.latency.getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return this.latency.getMaxMillis();
+    }
+
+    /**
+     * The timing of a single invocation
+     */
+    public class Sample {
+
+        private final long start = System.nanoTime();
+
+        private Sample() {
+        }
+
+        /**
+         * Records the invocation as failed
+         *
+         * @param failure The exception thrown by the invocation
+         */
+        public void failed(Throwable failure) {
+            OperationMetrics.this.failed(failure);
+        }
+
+        /**
+         * Records the latency of the invocation
+         */
+        public void stop() {
+            latency.record(System.nanoTime() - this.start);
+            throughput.mark(1);
+        }
+    }
+}
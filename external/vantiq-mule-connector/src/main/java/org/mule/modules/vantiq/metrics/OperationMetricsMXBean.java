@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the metrics of a connector operation
+ *
+ * @author Vantiq
+ */
+public interface OperationMetricsMXBean {
+
+    /**
+     * Returns the number of invocations, successful or not
+     *
+     * @return The invocation count
+     */
+    long getCount();
+
+    /**
+     * Returns the number of failed invocations
+     *
+     * @return The failure count
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the number of failures by cause, which is the HTTP status code
+     * returned by Vantiq, "network" or "validation".
+     *
+     * @return Failure counts by cause
+     */
+    Map<String,Long> getErrorsByStatus();
+
+    /**
+     * Returns the invocations per second over the last minute
+     *
+     * @return Invocations per second
+     */
+    double getThroughput();
+
+    /**
+     * Returns the mean latency
+     *
+     * @return Mean latency in milliseconds
+     */
+    double getLatencyMeanMillis();
+
+    /**
+     * Returns the median latency
+     *
+     * @return Median latency in milliseconds
+     */
+    double getLatency50thMillis();
+
+    /**
+     * Returns the 95th percentile latency
+     *
+     * @return 95th percentile latency in milliseconds
+     */
+    double getLatency95thMillis();
+
+    /**
+     * Returns the 99th percentile latency
+     *
+     * @return 99th percentile latency in milliseconds
+     */
+    double getLatency99thMillis();
+
+    /**
+     * Returns the maximum latency
+     *
+     * @return Maximum latency in milliseconds
+     */
+    double getLatencyMaxMillis();
+}
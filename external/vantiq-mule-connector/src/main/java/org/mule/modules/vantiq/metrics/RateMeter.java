@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the rate of events over the last minute, using one counter for
+ * each second of the minute.  Recording does not lock: a slot is claimed for
+ * a new second with a compare-and-set, so an event recorded at the very
+ * moment its slot is recycled may be lost, which is negligible for a rate.
+ *
+ * @author Vantiq
+ */
+public class RateMeter {
+
+    private static final int WINDOW = 60;
+
+    private final LongAdder[] counts = new LongAdder[WINDOW];
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW);
+
+    /**
+     * Creates a meter with no events
+     */
+    public RateMeter() {
+        for(int i = 0; i < WINDOW; i++) {
+            this.counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records events at the current time
+     *
+     * @param events The number of events
+     */
+    public void mark(long events) {
+        long now = System.currentTimeMillis() / 1000;
+        int slot = (int) (now % WINDOW);
+        long second = this.seconds.get(slot);
+        if(second != now && this.seconds.compareAndSet(slot, second, now)) {
+            // The slot still holds the count of a second a minute or more ago
+            this.counts[slot].reset();
+        }
+        this.counts[slot].add(events);
+    }
+
+    /**
+     * Returns the average rate over the last minute
+     *
+     * @return Events per second
+     */
+    public double getRate() {
+        long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for(int i = 0; i < WINDOW; i++) {
+            if(now - this.seconds.get(i) < WINDOW) {
+                total += this.counts[i].sum();
+            }
+        }
+        return (double) total / WINDOW;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of the events received on a subscription
+ *
+ * @author Vantiq
+ */
+public class SubscriptionMetrics implements SubscriptionMetricsMXBean {
+
+    private final LongAdder events = new LongAdder();
+    private final RateMeter eventRate = new RateMeter();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final AtomicLong lastLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+    private final List<LongSupplier> queues = new CopyOnWriteArrayList<LongSupplier>();
+    private final AtomicInteger listeners = new AtomicInteger();
+    private final LongAdder gaps = new LongAdder();
+    private volatile long lastGapStart = 0;
+    private volatile long lastGapEnd = 0;
+
+    /**
+     * Records an event received from Vantiq
+     */
+    public void received() {
+        this.events.increment();
+        this.eventRate.mark(1);
+    }
+
+    /**
+     * Records an event that the flow failed to process
+     */
+    public void failed() {
+        this.errors.increment();
+    }
+
+    /**
+     * Records a listener added to the subscription
+     */
+    public void listenerAdded() {
+        this.listeners.incrementAndGet();
+    }
+
+    /**
+     * Records a listener removed from the subscription
+     */
+    public void listenerRemoved() {
+        this.listeners.decrementAndGet();
+    }
+
+    /**
+     * Records a window in which events may have been missed because the
+     * subscription was disconnected
+     *
+     * @param from The time the disconnect was detected, in epoch milliseconds
+     * @param to The time the subscription was re-established, in epoch milliseconds
+     */
+    public synchronized void gap(long from, long to) {
+        this.gaps.increment();
+        this.lastGapStart = from;
+        this.lastGapEnd = to;
+    }
+
+    /**
+     * Records the time an event spent queued in a dispatcher before delivery
+     *
+     * @param lag The time in milliseconds
+     */
+    public void dispatched(long lag) {
+        this.lastLag.set(lag);
+        long max = this.maxLag.get();
+        while(lag > max && !this.maxLag.compareAndSet(max, lag)) {
+            max = this.maxLag.get();
+        }
+    }
+
+    /**
+     * Records events a dispatcher dropped due to overflow or shutdown
+     *
+     * @param count The number of events dropped
+     */
+    public void dropped(long count) {
+        this.dropped.add(count);
+    }
+
+    /**
+     * Records an event a dispatcher wrote to disk due to overflow
+     */
+    public void spilled() {
+        this.spilled.increment();
+    }
+
+    /**
+     * Adds a dispatcher queue to the reported queue depth
+     *
+     * @param depth The current depth of the queue
+     */
+    public void addQueue(LongSupplier depth) {
+        this.queues.add(depth);
+    }
+
+    /**
+     * Removes a dispatcher queue from the reported queue depth
+     *
+     * @param depth The queue given to {@link #addQueue(LongSupplier)}
+     */
+    public void removeQueue(LongSupplier depth) {
+        this.queues.remove(depth);
+    }
+
+    @Override
+    public long getEventCount() {
+        return this.events.sum();
+    }
+
+    @Override
+    public double getEventRate() {
+        return this.eventRate.getRate();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return this.errors.sum();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        long depth = 0;
+        for(LongSupplier queue : this.queues) {
+            depth += queue.getAsLong();
+        }
+        return depth;
+    }
+
+    @Override
+    public long getDispatchLagMillis() {
+        return this.lastLag.get();
+    }
+
+    @Override
+    public long getMaxDispatchLagMillis() {
+        return this.maxLag.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return this.spilled.sum();
+    }
+
+    @Override
+    public int getListenerCount() {
+        return this.listeners.get();
+    }
+
+    @Override
+    public long getGapCount() {
+        return this.gaps.sum();
+    }
+
+    @Override
+    public synchronized Date getLastGapStart() {
+        return (this.lastGapStart > 0) ? new Date(this.lastGapStart) : null;
+    }
+
+    @Override
+    public synchronized long getLastGapMillis() {
+        return this.lastGapEnd - this.lastGapStart;
+    }
+}
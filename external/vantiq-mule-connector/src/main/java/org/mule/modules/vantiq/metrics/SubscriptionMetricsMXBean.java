@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.metrics;
+
+import java.util.Date;
+
+/**
+ * The JMX view of the events received on a subscription
+ *
+ * @author Vantiq
+ */
+public interface SubscriptionMetricsMXBean {
+
+    /**
+     * Returns the number of events received
+     *
+     * @return The event count
+     */
+    long getEventCount();
+
+    /**
+     * Returns the events per second over the last minute
+     *
+     * @return Events per second
+     */
+    double getEventRate();
+
+    /**
+     * Returns the number of events the flow failed to process
+     *
+     * @return The failure count
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the number of events waiting in the dispatch queue, including
+     * spilled events.  Always 0 when events are delivered directly.
+     *
+     * @return The queue depth
+     */
+    long getQueueDepth();
+
+    /**
+     * Returns the time in milliseconds the most recently dispatched event spent queued
+     *
+     * @return The lag in milliseconds
+     */
+    long getDispatchLagMillis();
+
+    /**
+     * Returns the longest time in milliseconds any event spent queued
+     *
+     * @return The maximum lag in milliseconds
+     */
+    long getMaxDispatchLagMillis();
+
+    /**
+     * Returns the number of events the dispatch queue dropped due to overflow or shutdown
+     *
+     * @return The dropped event count
+     */
+    long getDroppedCount();
+
+    /**
+     * Returns the number of events the dispatch queue wrote to disk due to overflow
+     *
+     * @return The spilled event count
+     */
+    long getSpilledCount();
+
+    /**
+     * Returns the number of local listeners sharing the subscription
+     *
+     * @return The listener count
+     */
+    int getListenerCount();
+
+    /**
+     * Returns the number of times the subscription was re-established after
+     * its connection dropped
+     *
+     * @return The gap count
+     */
+    long getGapCount();
+
+    /**
+     * Returns the time the connection dropped before the most recent gap
+     *
+     * @return The start of the last gap, or null if there was none
+     */
+    Date getLastGapStart();
+
+    /**
+     * Returns the duration in milliseconds of the most recent gap, in which
+     * events may have been missed
+     *
+     * @return The length of the last gap
+     */
+    long getLastGapMillis();
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.publish;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import com.google.gson.Gson;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * A request body that writes the payload directly into the HTTP request as
+ * it is sent, without building the JSON document in memory first.
+ *
+ * Payloads that are already serialized, i.e. a <code>byte[]</code> or an
+ * <code>InputStream</code> (such as a Mule streaming payload), are copied
+ * as-is and must hold a JSON document.  Any other payload is converted to
+ * JSON with Gson while it is written.  The body is optionally compressed
+ * with gzip.
+ *
+ * An <code>InputStream</code> can only be read once, so it is closed once
+ * written and the body cannot be resent.  The client sending these bodies
+ * must therefore not retry requests on connection failures.
+ *
+ * @author Vantiq
+ */
+public class PayloadBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Gson gson = new Gson();
+
+    private final Object payload;
+    private final boolean gzip;
+    private volatile long bytesWritten = 0;
+
+    /**
+     * Creates a body for the given payload.
+     *
+     * @param payload The payload to send
+     * @param gzip If true, the body is compressed with gzip
+     */
+    public PayloadBody(Object payload, boolean gzip) {
+        this.payload = payload;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Returns if the payload is sent as-is rather than converted to JSON
+     *
+     * @param payload The payload
+     * @return true if the payload is already serialized
+     */
+    public static boolean isPreSerialized(Object payload) {
+        return payload instanceof byte[] || payload instanceof InputStream;
+    }
+
+    /**
+     * Returns if the body is compressed, in which case the request must
+     * have a <code>Content-Encoding: gzip</code> header.
+     *
+     * @return true if the body is compressed
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Returns the number of payload bytes written, before compression
+     *
+     * @return The number of bytes written so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        if(!this.gzip && this.payload instanceof byte[]) {
+            return ((byte[]) this.payload).length;
+        }
+        // Unknown, so the body is sent with chunked encoding
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        BufferedSink target = this.gzip ? Okio.buffer(new GzipSink(sink)) : sink;
+
+        if(this.payload instanceof byte[]) {
+            target.write((byte[]) this.payload);
+            this.bytesWritten = ((byte[]) this.payload).length;
+        } else if(this.payload instanceof InputStream) {
+            InputStream in = (InputStream) this.payload;
+            try {
+                this.bytesWritten = target.writeAll(Okio.source(in));
+            } finally {
+                in.close();
+            }
+        } else {
+            CountingOutputStream out = new CountingOutputStream(target.outputStream());
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            gson.toJson(this.payload, writer);
+            writer.flush();
+            this.bytesWritten = out.count;
+        }
+
+        if(this.gzip) {
+            // Closing writes the gzip trailer
+            target.close();
+        }
+    }
+
+    /**
+     * Counts the bytes passed to the underlying stream
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.publish;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * Coalesces concurrent publishes of data records to the same topic and data type
+ * into a single Vantiq publish message of the form:
+ * <pre>
+ *   { type: dataType, content: [ record, record, ... ] }
+ * </pre>
+ *
+ * A batch is sent as soon as it reaches the maximum number of records or the
+ * maximum estimated size in bytes, or once the oldest record in the batch has
+ * waited for the linger time.  Batches are sent on a background pool that bounds
+ * the number of in-flight publish requests.
+ *
+ * Callers block until the batch holding their records has been sent and receive
+ * the outcome of that request.  The records of a single caller are never split
+ * across batches, so a caller publishing more records than the maximum batch size
+ * is sent as a batch of its own.  If Vantiq rejects a batch (a 4xx response), the
+ * records of each caller are resent on their own, so that only the callers whose
+ * records were rejected fail.  Each caller receives its own exception, with the
+ * failure of the request as the cause.
+ *
+ * Outcomes are reported per caller, not per record: Vantiq does not say which
+ * record of a publish it rejected, so a caller whose records include a single
+ * rejected record fails as a whole.
+ *
+ * @author Vantiq
+ */
+public class PublishBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(PublishBatcher.class);
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Time given to the batches in flight to complete on close
+     */
+    private static final long CLOSE_TIMEOUT_MS = 30000;
+
+    private final TopicPublisher publisher;
+    private final int maxBatchSize;
+    private final long maxLingerMs;
+    private final long maxBatchBytes;
+
+    private final Map<String,Batch> openBatches = new HashMap<String,Batch>();
+    private final ScheduledThreadPoolExecutor lingerTimer;
+    private final ExecutorService senders;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a batcher that publishes through the given publisher.
+     *
+     * @param publisher The publisher used to send the batches
+     * @param maxBatchSize The maximum number of records in a single batch
+     * @param maxLingerMs The maximum time in milliseconds a record waits for a batch to fill
+     * @param maxBatchBytes The maximum estimated JSON size of a batch in bytes.  0 means no limit.
+     * @param maxInFlight The maximum number of concurrent publish requests
+     */
+    public PublishBatcher(TopicPublisher publisher,
+                          int maxBatchSize,
+                          long maxLingerMs,
+                          long maxBatchBytes,
+                          int maxInFlight) {
+        this.publisher     = publisher;
+        this.maxBatchSize  = Math.max(1, maxBatchSize);
+        this.maxLingerMs   = Math.max(0, maxLingerMs);
+        this.maxBatchBytes = Math.max(0, maxBatchBytes);
+        this.lingerTimer   = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("vantiq-publish-linger"));
+        this.senders       = Executors.newFixedThreadPool(Math.max(1, maxInFlight), new NamedThreadFactory("vantiq-publish-sender"));
+
+        // Open batches are sent by close(), so pending linger timers can be dropped on shutdown
+        this.lingerTimer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Publishes the given records as part of a batch for the given topic and data type.  This
+     * method blocks until the batch containing the records has been sent.
+     *
+     * @param topic The Vantiq topic to publish to
+     * @param dataType The Vantiq data type of the records
+     * @param records The records to publish
+     *
+     * @throws VantiqException If the publish request carrying the records failed
+     * @throws IOException If the batcher is closed or the caller is interrupted while waiting
+     */
+    public void publish(String topic, String dataType, List<?> records) throws IOException {
+        if(records.isEmpty()) {
+            return;
+        }
+
+        Waiter waiter = new Waiter(records);
+        long bytes = (this.maxBatchBytes > 0) ? estimateBytes(records) : 0;
+
+        Batch ready = null;
+        Batch full  = null;
+        synchronized(this.openBatches) {
+            if(this.closed) {
+                throw new IOException("Publish batcher has been closed");
+            }
+
+            String key = topic + "\u0000" + dataType;
+            Batch batch = this.openBatches.get(key);
+
+            // If the records do not fit, send the current batch and start a new one
+            if(batch != null && !batch.fits(records.size(), bytes)) {
+                this.openBatches.remove(key);
+                ready = batch;
+                batch = null;
+            }
+            if(batch == null) {
+                batch = new Batch(key, topic, dataType);
+                this.openBatches.put(key, batch);
+                scheduleLinger(batch);
+            }
+            batch.add(records, bytes, waiter);
+
+            if(batch.isFull()) {
+                this.openBatches.remove(key);
+                full = batch;
+            }
+        }
+
+        if(ready != null) {
+            send(ready);
+        }
+        if(full != null) {
+            send(full);
+        }
+
+        waiter.await();
+    }
+
+    /**
+     * Sends any open batches on the calling thread and shuts down the background
+     * threads.  Waits for the publish requests in flight to complete, for up to
+     * 30 seconds.
+     */
+    public void close() {
+        List<Batch> remaining;
+        synchronized(this.openBatches) {
+            this.closed = true;
+            remaining = new ArrayList<Batch>(this.openBatches.values());
+            this.openBatches.clear();
+        }
+        // A linger timer that is already running may still be sending its batch, so
+        // the timer is not interrupted
+        this.lingerTimer.shutdown();
+        this.senders.shutdown();
+        for(Batch batch : remaining) {
+            sendNow(batch);
+        }
+        try {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+            if(!this.lingerTimer.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    || !this.senders.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                log.warn("Publish batcher closed with batches still in flight");
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleLinger(final Batch batch) {
+        try {
+            this.lingerTimer.schedule(new Runnable() {
+                @Override public void run() {
+                    boolean expired;
+                    synchronized(openBatches) {
+                        expired = openBatches.get(batch.key) == batch;
+                        if(expired) {
+                            openBatches.remove(batch.key);
+                        }
+                    }
+                    if(expired) {
+                        send(batch);
+                    }
+                }
+            }, this.maxLingerMs, TimeUnit.MILLISECONDS);
+        } catch(RejectedExecutionException ex) {
+            // Timer is shut down; the batch is sent by close()
+        }
+    }
+
+    private void send(final Batch batch) {
+        try {
+            this.senders.execute(new Runnable() {
+                @Override public void run() {
+                    sendNow(batch);
+                }
+            });
+        } catch(RejectedExecutionException ex) {
+            // Pool is shut down by close(), so send the batch on the calling thread
+            sendNow(batch);
+        }
+    }
+
+    private void sendNow(Batch batch) {
+        try {
+            Exception failure = publishNow(batch.topic, batch.dataType, batch.records);
+
+            if(failure != null) {
+                log.error("Batch publish of " + batch.records.size() + " records to " + batch.topic + " failed", failure);
+            } else if(log.isDebugEnabled()) {
+                log.debug("Published batch of " + batch.records.size() + " records to " + batch.topic);
+            }
+
+            if(failure != null && batch.waiters.size() > 1 && isRejected(failure)) {
+                // Vantiq rejected the content, so find out whose records were at fault
+                for(Waiter waiter : batch.waiters) {
+                    waiter.complete(publishNow(batch.topic, batch.dataType, waiter.records));
+                }
+                return;
+            }
+
+            for(Waiter waiter : batch.waiters) {
+                waiter.complete(failure);
+            }
+        } finally {
+            // Never leave a caller waiting, e.g. if the publisher threw an Error
+            for(Waiter waiter : batch.waiters) {
+                waiter.complete(new IOException("Batch publish to " + batch.topic + " did not complete"));
+            }
+        }
+    }
+
+    private Exception publishNow(String topic, String dataType, List<?> records) {
+        //
+        // Build message with the fields
+        //
+        //  type:    dataType,
+        //  content: records
+        //
+        Map<String,Object> message = new HashMap<String,Object>();
+        message.put("type", dataType);
+        message.put("content", records);
+
+        try {
+            this.publisher.publish(topic, message);
+            return null;
+        } catch(RuntimeException | IOException ex) {
+            return ex;
+        }
+    }
+
+    private static boolean isRejected(Exception failure) {
+        if(!(failure instanceof VantiqException)) {
+            return false;
+        }
+        int status = ((VantiqException) failure).getStatusCode();
+        return status >= 400 && status < 500;
+    }
+
+    private static long estimateBytes(List<?> records) {
+        // Count the characters as they are generated rather than building each JSON string
+        CharCounter counter = new CharCounter();
+        for(Object record : records) {
+            gson.toJson(record, counter);
+        }
+        // Include one byte for each separating comma
+        return counter.count + records.size();
+    }
+
+    /**
+     * Counts the characters appended to it, discarding the characters
+     */
+    private static class CharCounter implements Appendable {
+
+        private long count = 0;
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            this.count += (csq == null) ? 4 : csq.length();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            this.count += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            this.count++;
+            return this;
+        }
+    }
+
+    /**
+     * An open batch of records for a single topic and data type
+     */
+    private class Batch {
+
+        private final String key;
+        private final String topic;
+        private final String dataType;
+        private final List<Object> records = new ArrayList<Object>();
+        private final List<Waiter> waiters = new ArrayList<Waiter>();
+        private long bytes = 0;
+
+        Batch(String key, String topic, String dataType) {
+            this.key = key;
+            this.topic = topic;
+            this.dataType = dataType;
+        }
+
+        boolean fits(int count, long size) {
+            if(this.records.size() + count > maxBatchSize) {
+                return false;
+            }
+            return maxBatchBytes == 0 || this.bytes + size <= maxBatchBytes;
+        }
+
+        boolean isFull() {
+            if(this.records.size() >= maxBatchSize) {
+                return true;
+            }
+            return maxBatchBytes > 0 && this.bytes >= maxBatchBytes;
+        }
+
+        void add(List<?> items, long size, Waiter waiter) {
+            this.records.addAll(items);
+            this.bytes += size;
+            this.waiters.add(waiter);
+        }
+    }
+
+    /**
+     * Holds the records of one caller and the outcome of their publish
+     */
+    private static class Waiter {
+
+        private final List<?> records;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Exception failure;
+
+        Waiter(List<?> records) {
+            this.records = records;
+        }
+
+        /**
+         * Records the outcome, unless one has already been recorded
+         */
+        void complete(Exception failure) {
+            if(this.done.getCount() == 0) {
+                return;
+            }
+            this.failure = failure;
+            this.done.countDown();
+        }
+
+        void await() throws IOException {
+            try {
+                this.done.await();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for batch publish");
+            }
+            // The failure may be shared with other callers, so each caller gets its own exception
+            if(this.failure instanceof VantiqException) {
+                throw new VantiqException((VantiqException) this.failure);
+            } else if(this.failure instanceof IOException) {
+                throw new IOException(this.failure.getMessage(), this.failure);
+            } else if(this.failure != null) {
+                throw new RuntimeException(this.failure.getMessage(), this.failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.publish;
+
+import org.mule.modules.vantiq.error.VantiqException;
+
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Publishes through the Vantiq SDK, which converts the whole payload to a
+ * JSON string before sending it.
+ *
+ * @author Vantiq
+ */
+public class SdkTopicPublisher implements TopicPublisher {
+
+    private final Vantiq vantiq;
+
+    /**
+     * Creates a publisher using the given SDK instance.
+     *
+     * @param vantiq The Vantiq SDK instance
+     */
+    public SdkTopicPublisher(Vantiq vantiq) {
+        this.vantiq = vantiq;
+    }
+
+    @Override
+    public void publish(String topic, Object payload) {
+        VantiqResponse response = this.vantiq.publish(Vantiq.SystemResources.TOPICS.value(), topic, payload);
+        if(!response.isSuccess()) {
+            throw new VantiqException(response);
+        }
+    }
+}
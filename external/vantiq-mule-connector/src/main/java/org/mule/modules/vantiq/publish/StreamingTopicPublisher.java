@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.publish;
+
+import java.io.IOException;
+
+import org.mule.modules.vantiq.error.VantiqException;
+
+import io.vantiq.client.Vantiq;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Publishes by posting to the Vantiq REST API directly, streaming the
+ * payload into the request with a {@link PayloadBody}.  The access token
+ * of the authenticated SDK instance is used for each request.
+ *
+ * @author Vantiq
+ */
+public class StreamingTopicPublisher implements TopicPublisher {
+
+    private static final String TOPICS_PATH = "/api/v1/resources/topics";
+
+    private final Vantiq vantiq;
+    private final OkHttpClient client;
+    private final boolean gzip;
+
+    /**
+     * Creates a publisher for the server of the given SDK instance.
+     *
+     * @param vantiq The authenticated Vantiq SDK instance
+     * @param client The HTTP client used to send the requests
+     * @param gzip If true, request bodies are compressed with gzip
+     */
+    public StreamingTopicPublisher(Vantiq vantiq, OkHttpClient client, boolean gzip) {
+        this.vantiq = vantiq;
+        this.client = client;
+        this.gzip   = gzip;
+    }
+
+    @Override
+    public void publish(String topic, Object payload) throws IOException {
+        String server = this.vantiq.getServer();
+        if(server.endsWith("/")) {
+            server = server.substring(0, server.length() - 1);
+        }
+        String path = topic.startsWith("/") ? topic : "/" + topic;
+
+        PayloadBody body = new PayloadBody(payload, this.gzip);
+        Request.Builder request = new Request.Builder()
+            .url(server + TOPICS_PATH + path)
+            .header("Authorization", "Bearer " + this.vantiq.getAccessToken())
+            .post(body);
+        if(body.isGzip()) {
+            request.header("Content-Encoding", "gzip");
+        }
+
+        Response response = this.client.newCall(request.build()).execute();
+        try {
+            if(!response.isSuccessful()) {
+                ResponseBody error = response.body();
+                throw new VantiqException(response.code(), (error != null) ? error.string() : "");
+            }
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.publish;
+
+import java.io.IOException;
+
+import org.mule.modules.vantiq.error.VantiqException;
+
+/**
+ * Sends publish events to Vantiq topics.  Implementations differ in how the
+ * payload is serialized into the request.
+ *
+ * @author Vantiq
+ */
+public interface TopicPublisher {
+
+    /**
+     * Publishes the payload on the given topic.
+     *
+     * @param topic The Vantiq topic to publish to (e.g. "/my/topic")
+     * @param payload The content of the publish event
+     *
+     * @throws VantiqException If Vantiq rejected the request
+     * @throws IOException If a network error occurs
+     */
+    void publish(String topic, Object payload) throws IOException;
+}
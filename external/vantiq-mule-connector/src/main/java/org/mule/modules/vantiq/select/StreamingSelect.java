@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.select;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mule.api.callback.SourceCallback;
+import org.mule.api.store.ObjectStore;
+import org.mule.api.store.ObjectStoreException;
+import org.mule.modules.vantiq.error.VantiqException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import io.vantiq.client.SortSpec;
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Incrementally reads the records of a Vantiq data type that changed since
+ * the previous poll.  Records are read in pages sorted by a watermark field
+ * (e.g. <code>ars_modifiedAt</code>) and emitted either one at a time or in
+ * fixed-size lists.  The position reached is kept in a {@link Watermark} that
+ * is saved in the object store after each page, so a restart continues where
+ * the previous run stopped instead of rescanning the data type.
+ *
+ * Records without a value for the watermark field are never emitted.
+ *
+ * @author Vantiq
+ */
+public class StreamingSelect {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingSelect.class);
+
+    private static final String ID_FIELD = "_id";
+
+    private final Vantiq vantiq;
+    private final ObjectStore<Watermark> store;
+    private final String storeKey;
+    private final String dataType;
+    private final List<String> selectList;
+    private final Map<String,Object> where;
+    private final String watermarkField;
+    private final int pageSize;
+    private final int emitSize;
+
+    /**
+     * Creates a streaming select.
+     *
+     * @param vantiq The Vantiq SDK instance
+     * @param store The object store holding the watermarks
+     * @param storeKey The key of the watermark in the object store
+     * @param dataType The Vantiq data type to query
+     * @param selectList The optional list of properties to return for each record
+     * @param where The optional where clause to filter the data
+     * @param watermarkField The field used to order the records and track progress
+     * @param pageSize The number of records read from Vantiq in each request
+     * @param emitSize The number of records in each message, 1 emits each record on its own
+     */
+    public StreamingSelect(Vantiq vantiq,
+                           ObjectStore<Watermark> store,
+                           String storeKey,
+                           String dataType,
+                           List<String> selectList,
+                           Map<String,Object> where,
+                           String watermarkField,
+                           int pageSize,
+                           int emitSize) {
+        this.vantiq         = vantiq;
+        this.store          = store;
+        this.storeKey       = storeKey;
+        this.dataType       = dataType;
+        this.where          = where;
+        this.watermarkField = watermarkField;
+        this.pageSize       = Math.max(1, pageSize);
+        this.emitSize       = Math.max(1, emitSize);
+
+        // The id and watermark are required to track the position
+        if(selectList != null && !selectList.isEmpty()) {
+            this.selectList = new ArrayList<String>(selectList);
+            if(!this.selectList.contains(ID_FIELD)) {
+                this.selectList.add(ID_FIELD);
+            }
+            if(!this.selectList.contains(watermarkField)) {
+                this.selectList.add(watermarkField);
+            }
+        } else {
+            this.selectList = null;
+        }
+    }
+
+    /**
+     * Reads all records changed since the last poll and passes them to the
+     * callback.  If the callback fails, the watermark is saved at the last
+     * record successfully processed and the remaining records are read again
+     * on the next poll.
+     *
+     * @param callback The callback receiving the records
+     * @throws Exception If the query or the callback fails
+     */
+    @SuppressWarnings("unchecked")
+    public void poll(SourceCallback callback) throws Exception {
+        Watermark watermark = loadWatermark();
+        long emitted = 0;
+
+        // The cursor tracks the records read, which may be ahead of the records emitted
+        // since records are carried across pages so that each message holds emitSize records
+        Watermark cursor = new Watermark(watermark);
+        List<JsonObject> pending = new ArrayList<JsonObject>(this.emitSize);
+        try {
+            boolean more = true;
+            while(more) {
+                // Over-fetch by the number of records already read at the cursor so
+                // that a page always contains new records if any are left
+                int limit = this.pageSize + cursor.getIds().size();
+                VantiqResponse response = this.vantiq.select(this.dataType,
+                                                             this.selectList,
+                                                             buildWhere(cursor),
+                                                             new SortSpec(this.watermarkField, false),
+                                                             limit);
+                if(!response.isSuccess()) {
+                    throw new VantiqException(response);
+                }
+
+                List<JsonObject> page = (List<JsonObject>) response.getBody();
+                more = page.size() >= limit;
+
+                for(JsonObject record : page) {
+                    Serializable value = getWatermark(record, this.watermarkField);
+                    String id    = getString(record, ID_FIELD);
+                    if(value == null || cursor.isEmitted(value, id)) {
+                        continue;
+                    }
+
+                    cursor.advance(value, id);
+                    pending.add(record);
+                    if(pending.size() >= this.emitSize) {
+                        emit(callback, pending);
+                        advance(watermark, pending);
+                        emitted += pending.size();
+                        pending.clear();
+                    }
+                }
+
+                saveWatermark(watermark);
+            }
+
+            if(!pending.isEmpty()) {
+                emit(callback, pending);
+                advance(watermark, pending);
+                emitted += pending.size();
+                saveWatermark(watermark);
+            }
+        } catch(Exception ex) {
+            try {
+                saveWatermark(watermark);
+            } catch(ObjectStoreException storeEx) {
+                log.error("Unable to save watermark for " + this.dataType, storeEx);
+            }
+            throw ex;
+        }
+
+        log.debug("Streaming select on " + this.dataType + " emitted " + emitted + " records, now at " + watermark);
+    }
+
+    private void emit(SourceCallback callback, List<JsonObject> records) throws Exception {
+        if(this.emitSize == 1) {
+            callback.process(records.get(0));
+        } else {
+            callback.process(new ArrayList<JsonObject>(records));
+        }
+    }
+
+    private void advance(Watermark watermark, List<JsonObject> records) {
+        for(JsonObject record : records) {
+            watermark.advance(getWatermark(record, this.watermarkField), getString(record, ID_FIELD));
+        }
+    }
+
+    private Object buildWhere(Watermark watermark) {
+        Map<String,Object> condition = new HashMap<String,Object>();
+        if(watermark.getValue() == null) {
+            condition.put("$ne", null);
+        } else {
+            condition.put("$gte", watermark.getValue());
+        }
+
+        if(this.where == null || this.where.isEmpty()) {
+            Map<String,Object> result = new HashMap<String,Object>();
+            result.put(this.watermarkField, condition);
+            return result;
+        } else if(!this.where.containsKey(this.watermarkField)) {
+            Map<String,Object> result = new HashMap<String,Object>(this.where);
+            result.put(this.watermarkField, condition);
+            return result;
+        }
+
+        // The user's where already constrains the watermark field, so both must hold
+        Map<String,Object> watermarkWhere = new HashMap<String,Object>();
+        watermarkWhere.put(this.watermarkField, condition);
+        List<Object> clauses = new ArrayList<Object>();
+        clauses.add(this.where);
+        clauses.add(watermarkWhere);
+        Map<String,Object> result = new HashMap<String,Object>();
+        result.put("$and", clauses);
+        return result;
+    }
+
+    private Watermark loadWatermark() throws ObjectStoreException {
+        if(this.store.contains(this.storeKey)) {
+            return this.store.retrieve(this.storeKey);
+        }
+        return new Watermark();
+    }
+
+    private void saveWatermark(Watermark watermark) throws ObjectStoreException {
+        if(watermark.getValue() == null) {
+            return;
+        }
+        if(this.store.contains(this.storeKey)) {
+            this.store.remove(this.storeKey);
+        }
+        this.store.store(this.storeKey, watermark);
+    }
+
+    /**
+     * Returns the watermark value of the record, keeping numbers numeric so
+     * that they are compared numerically rather than as strings
+     */
+    private static Serializable getWatermark(JsonObject record, String field) {
+        JsonElement element = record.get(field);
+        if(element == null || !element.isJsonPrimitive()) {
+            return null;
+        }
+        JsonPrimitive value = element.getAsJsonPrimitive();
+        if(value.isNumber()) {
+            double number = value.getAsDouble();
+            if(number == Math.rint(number) && Math.abs(number) < 0x1p63) {
+                return value.getAsLong();
+            }
+            return number;
+        } else if(value.isBoolean()) {
+            return value.getAsBoolean();
+        }
+        return value.getAsString();
+    }
+
+    private static String getString(JsonObject record, String field) {
+        JsonElement element = record.get(field);
+        if(element == null || element.isJsonNull()) {
+            return null;
+        }
+        return element.getAsString();
+    }
+}
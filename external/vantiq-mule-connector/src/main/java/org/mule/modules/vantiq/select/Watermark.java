@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.select;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The position of a streaming select in a Vantiq data type.  The position is
+ * the highest value of the watermark field that has been emitted, together
+ * with the ids of the records emitted with exactly that value.  The ids allow
+ * records sharing the same watermark value to be split across pages and polls
+ * without being emitted twice or skipped.
+ *
+ * The value keeps the type of the watermark field, a String for DateTime and
+ * String fields or a Long or Double for numeric fields, so that it is compared
+ * with the same ordering as the field when sent back to Vantiq.
+ *
+ * @author Vantiq
+ */
+public class Watermark implements Serializable {
+
+    private static final long serialVersionUID = -2218405936728810135L;
+
+    private Serializable value;
+    private final Set<String> ids = new HashSet<String>();
+
+    /**
+     * Creates an empty watermark, positioned before all records
+     */
+    public Watermark() {
+    }
+
+    /**
+     * Creates a copy of the given watermark
+     *
+     * @param other The watermark to copy
+     */
+    public Watermark(Watermark other) {
+        this.value = other.value;
+        this.ids.addAll(other.ids);
+    }
+
+    /**
+     * Returns the highest watermark value emitted so far
+     *
+     * @return The watermark value or null if nothing has been emitted
+     */
+    public Serializable getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the ids of the records emitted with the current watermark value
+     *
+     * @return The record ids
+     */
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Returns if the given record has already been emitted
+     *
+     * @param recordValue The watermark value of the record
+     * @param id The id of the record
+     * @return true if the record has already been emitted
+     */
+    public boolean isEmitted(Serializable recordValue, String id) {
+        return this.value != null && this.value.equals(recordValue) && this.ids.contains(id);
+    }
+
+    /**
+     * Advances the watermark past the given record.  Records must be
+     * advanced in ascending order of their watermark value.
+     *
+     * @param recordValue The watermark value of the record
+     * @param id The id of the record
+     */
+    public void advance(Serializable recordValue, String id) {
+        if(this.value == null || !this.value.equals(recordValue)) {
+            this.value = recordValue;
+            this.ids.clear();
+        }
+        this.ids.add(id);
+    }
+
+    @Override
+    public String toString() {
+        return "Watermark[" + value + ", " + ids.size() + " ids]";
+    }
+}
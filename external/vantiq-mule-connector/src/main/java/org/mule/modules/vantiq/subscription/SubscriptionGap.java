@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.subscription;
+
+import java.util.Date;
+
+/**
+ * A window of time during which the events of a subscription may have been
+ * missed, because the WebSocket connection to Vantiq was down.
+ *
+ * @author Vantiq
+ */
+public class SubscriptionGap {
+
+    private final String path;
+    private final long from;
+    private final long to;
+
+    /**
+     * Creates a gap for the given subscription path
+     *
+     * @param path The subscription path
+     * @param from The time the connection drop was detected, in epoch milliseconds
+     * @param to The time the subscription was re-established, in epoch milliseconds
+     */
+    public SubscriptionGap(String path, long from, long to) {
+        this.path = path;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns the subscription path
+     *
+     * @return The subscription path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the start of the window, which is the time the connection
+     * drop was detected
+     *
+     * @return The start of the gap in epoch milliseconds
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the end of the window, which is the time the subscription
+     * was re-established
+     *
+     * @return The end of the gap in epoch milliseconds
+     */
+    public long getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return path + " from " + new Date(from) + " to " + new Date(to);
+    }
+}
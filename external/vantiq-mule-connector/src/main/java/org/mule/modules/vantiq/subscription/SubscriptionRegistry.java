@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.vantiq.metrics.ConnectorMetrics;
+import org.mule.modules.vantiq.metrics.SubscriptionMetrics;
+import org.mule.modules.vantiq.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vantiq.client.SubscriptionCallback;
+import io.vantiq.client.SubscriptionMessage;
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.Vantiq.TypeOperation;
+
+/**
+ * Shares the subscriptions of a Vantiq connection between sources.  A single
+ * server subscription is created for each path and its events are fanned out
+ * to all local listeners on that path.
+ *
+ * All subscriptions of a connection share one WebSocket.  When the WebSocket
+ * fails, every active path is resubscribed after a jittered, exponentially
+ * increasing delay.  Once a path is re-established, the window in which its
+ * events may have been missed is logged as a {@link SubscriptionGap} and
+ * recorded in the {@link SubscriptionMetrics} of the path, together with
+ * its number of listeners.
+ *
+ * The Vantiq SDK can only remove all subscriptions at once, so a path without
+ * listeners stays subscribed on the server (its events are discarded) until
+ * the next reconnect.  A listener added to such a path reuses the existing
+ * server subscription.
+ *
+ * @author Vantiq
+ */
+public class SubscriptionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionRegistry.class);
+
+    private final Vantiq vantiq;
+    private final ConnectorMetrics metrics;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Random random = new Random();
+
+    private final Map<String,Entry> entries = new HashMap<String,Entry>();
+    private final ScheduledExecutorService reconnectTimer;
+
+    private boolean reconnectScheduled = false;
+    private int reconnectAttempt = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a registry for the given connection.
+     *
+     * @param vantiq The Vantiq SDK instance holding the WebSocket
+     * @param metrics The metrics of the connection
+     * @param initialBackoff The delay in milliseconds before the first reconnect attempt
+     * @param maxBackoff The maximum delay in milliseconds between reconnect attempts
+     */
+    public SubscriptionRegistry(Vantiq vantiq, ConnectorMetrics metrics, long initialBackoff, long maxBackoff) {
+        this.vantiq         = vantiq;
+        this.metrics        = metrics;
+        this.initialBackoff = Math.max(1, initialBackoff);
+        this.maxBackoff     = Math.max(this.initialBackoff, maxBackoff);
+        this.reconnectTimer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("vantiq-resubscribe"));
+    }
+
+    /**
+     * Adds a listener for the events on the given path.  The server subscription
+     * is created if this is the first listener on the path.
+     *
+     * @param resource The Vantiq resource, either TOPICS or TYPES
+     * @param id The unique ID for the specific resource instance
+     * @param op Only for TYPE events, the specific event type
+     * @param listener The listener receiving the events
+     * @return Handle used to remove the listener
+     */
+    public Subscription subscribe(Vantiq.SystemResources resource,
+                                  String id,
+                                  TypeOperation op,
+                                  SubscriptionCallback listener) {
+        final String path;
+        if(op == null) {
+            path = resource + "/" + id;
+        } else {
+            path = resource + "/" + id + "/" + op.toString().toLowerCase();
+        }
+
+        Entry entry;
+        boolean create;
+        synchronized(this) {
+            if(this.closed) {
+                throw new IllegalStateException("Subscription registry has been closed");
+            }
+            entry = this.entries.get(path);
+            create = (entry == null);
+            if(create) {
+                entry = new Entry(path, resource, id, op);
+                this.entries.put(path, entry);
+            }
+            entry.listeners.add(listener);
+        }
+        entry.metrics.listenerAdded();
+
+        if(create) {
+            log.debug("Creating server subscription for " + path);
+            serverSubscribe(entry);
+        } else {
+            log.debug("Sharing server subscription for " + path + " with " + entry.listeners.size() + " listeners");
+            if(entry.connected) {
+                listener.onConnect();
+            }
+        }
+        return new Subscription(entry, listener);
+    }
+
+    /**
+     * Removes all subscriptions and stops reconnecting.
+     */
+    public void close() {
+        synchronized(this) {
+            this.closed = true;
+            for(Entry entry : this.entries.values()) {
+                for(SubscriptionCallback listener : entry.listeners) {
+                    if(entry.listeners.remove(listener)) {
+                        entry.metrics.listenerRemoved();
+                    }
+                }
+            }
+            this.entries.clear();
+        }
+        this.reconnectTimer.shutdownNow();
+        this.vantiq.unsubscribeAll();
+    }
+
+    private void serverSubscribe(Entry entry) {
+        try {
+            this.vantiq.subscribe(entry.resource.value(), entry.id, entry.op, entry);
+        } catch(RuntimeException ex) {
+            log.error("Subscription to " + entry.path + " failed", ex);
+            connectionLost();
+        }
+    }
+
+    /**
+     * Called when the WebSocket fails.  Schedules a reconnect, unless one is
+     * already pending.
+     */
+    private void connectionLost() {
+        long delay;
+        synchronized(this) {
+            long now = System.currentTimeMillis();
+            for(Entry entry : this.entries.values()) {
+                if(entry.connected) {
+                    entry.connected = false;
+                    entry.disconnectedAt = now;
+                }
+            }
+            if(this.closed || this.reconnectScheduled) {
+                return;
+            }
+            this.reconnectScheduled = true;
+
+            // Full jitter: a random delay up to the exponential backoff
+            long backoff = this.initialBackoff << Math.min(this.reconnectAttempt, 20);
+            backoff = Math.min(backoff, this.maxBackoff);
+            delay = (long) (this.random.nextDouble() * backoff);
+            this.reconnectAttempt++;
+        }
+
+        log.warn("Vantiq subscription connection lost, resubscribing in " + delay + " ms");
+        try {
+            this.reconnectTimer.schedule(new Runnable() {
+                @Override public void run() {
+                    resubscribe();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch(RejectedExecutionException ex) {
+            // Registry is closed
+        }
+    }
+
+    private void resubscribe() {
+        List<Entry> active = new ArrayList<Entry>();
+        synchronized(this) {
+            this.reconnectScheduled = false;
+            if(this.closed) {
+                return;
+            }
+
+            // Paths without listeners are dropped rather than resubscribed
+            Iterator<Entry> it = this.entries.values().iterator();
+            while(it.hasNext()) {
+                Entry entry = it.next();
+                if(entry.listeners.isEmpty()) {
+                    it.remove();
+                } else {
+                    active.add(entry);
+                }
+            }
+        }
+
+        // Discard the failed WebSocket so that a new one is opened
+        try {
+            this.vantiq.unsubscribeAll();
+        } catch(RuntimeException ex) {
+            log.debug("Error closing failed subscriptions", ex);
+        }
+        for(Entry entry : active) {
+            serverSubscribe(entry);
+        }
+    }
+
+    /**
+     * A handle on a listener added to the registry
+     */
+    public class Subscription {
+
+        private final Entry entry;
+        private final SubscriptionCallback listener;
+
+        Subscription(Entry entry, SubscriptionCallback listener) {
+            this.entry = entry;
+            this.listener = listener;
+        }
+
+        /**
+         * Returns the subscription path
+         *
+         * @return The subscription path
+         */
+        public String getPath() {
+            return this.entry.path;
+        }
+
+        /**
+         * Removes the listener from the registry
+         */
+        public void unsubscribe() {
+            boolean removed;
+            synchronized(SubscriptionRegistry.this) {
+                removed = this.entry.listeners.remove(this.listener);
+            }
+            if(removed) {
+                this.entry.metrics.listenerRemoved();
+            }
+            log.debug("Removed listener from " + this.entry.path + ", " + this.entry.listeners.size() + " remaining");
+        }
+    }
+
+    /**
+     * The server subscription for a path and its local listeners.  Receives the
+     * SDK callbacks and fans them out to the listeners.
+     */
+    private class Entry implements SubscriptionCallback {
+
+        private final String path;
+        private final Vantiq.SystemResources resource;
+        private final String id;
+        private final TypeOperation op;
+        private final List<SubscriptionCallback> listeners = new CopyOnWriteArrayList<SubscriptionCallback>();
+        private final SubscriptionMetrics metrics;
+
+        private volatile boolean connected = false;
+        private volatile long disconnectedAt = 0;
+
+        Entry(String path, Vantiq.SystemResources resource, String id, TypeOperation op) {
+            this.path = path;
+            this.resource = resource;
+            this.id = id;
+            this.op = op;
+            this.metrics = SubscriptionRegistry.this.metrics.subscription(path);
+        }
+
+        @Override
+        public void onConnect() {
+            long now = System.currentTimeMillis();
+            if(this.disconnectedAt > 0) {
+                SubscriptionGap gap = new SubscriptionGap(this.path, this.disconnectedAt, now);
+                log.warn("Resubscribed, events may have been missed on " + gap);
+                this.metrics.gap(gap.getFrom(), gap.getTo());
+                this.disconnectedAt = 0;
+            }
+            this.connected = true;
+            synchronized(SubscriptionRegistry.this) {
+                reconnectAttempt = 0;
+            }
+            for(SubscriptionCallback listener : this.listeners) {
+                listener.onConnect();
+            }
+        }
+
+        @Override
+        public void onMessage(SubscriptionMessage message) {
+            // Counted once for the path, however many listeners share it
+            this.metrics.received();
+            for(SubscriptionCallback listener : this.listeners) {
+                listener.onMessage(message);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            for(SubscriptionCallback listener : this.listeners) {
+                listener.onError(error);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            for(SubscriptionCallback listener : this.listeners) {
+                listener.onFailure(t);
+            }
+            connectionLost();
+        }
+    }
+}
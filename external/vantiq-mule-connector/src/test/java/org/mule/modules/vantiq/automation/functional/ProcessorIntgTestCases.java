@@ -28,12 +28,17 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.mule.common.metadata.DefaultMetaDataField;
@@ -43,6 +48,9 @@ import org.mule.common.metadata.MetaDataKey;
 import org.mule.common.metadata.datatype.DataType;
 import org.mule.modules.vantiq.VantiqConnector;
 import org.mule.modules.vantiq.VantiqDataSenseResolver;
+import org.mule.modules.vantiq.batch.BulkResult;
+import org.mule.modules.vantiq.publish.PublishBatcher;
+import org.mule.modules.vantiq.publish.SdkTopicPublisher;
 import org.mule.tools.devkit.ctf.junit.AbstractTestCase;
 
 import com.google.gson.Gson;
@@ -112,6 +120,37 @@ public class ProcessorIntgTestCases extends AbstractTestCase<VantiqConnector> {
         getConnector().publishData(dataType, payloadList);
     }
 
+    @Test
+    public void verifyBatchPublishData() throws Exception {
+        final String topic = getConnector().getConnectionManagement().getTopic();
+        final PublishBatcher batcher = new PublishBatcher(new SdkTopicPublisher(getConnector().getVantiq()), 10, 50, 0, 2);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for(int i = 0; i < 25; i++) {
+                final Map<String,Object> payload = new HashMap<String,Object>();
+                payload.put("id", "batch-" + i);
+                payload.put("x", (double) i);
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        List<Map<String,Object>> payloadList = new ArrayList<Map<String,Object>>();
+                        payloadList.add(payload);
+                        batcher.publish(topic, "TestType", payloadList);
+                        return null;
+                    }
+                }));
+            }
+            
+            // Note that failure would throw an exception
+            for(Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+            batcher.close();
+        }
+    }
+
     @Test
     public void verifyInsertData() throws Exception {
         String dataType = "TestType";
@@ -123,6 +162,23 @@ public class ProcessorIntgTestCases extends AbstractTestCase<VantiqConnector> {
         getConnector().insertData(dataType, payload);
     }
 
+    @Test
+    public void verifyInsertBatch() throws Exception {
+        String dataType = "TestType";
+        List<Map<String,Object>> payloadList = new ArrayList<Map<String,Object>>();
+        for(int i = 0; i < 25; i++) {
+            Map<String,Object> payload = new HashMap<String,Object>();
+            payload.put("id", "bulk-" + i);
+            payload.put("x", (double) i);
+            payloadList.add(payload);
+        }
+
+        BulkResult result = getConnector().insertBatch(dataType, payloadList.iterator(), 10, 2);
+        assertThat("Total records",  result.getTotal(), is(25L));
+        assertThat("Failed records", result.getFailedIndexes(), empty());
+        assertThat("Chunks sent",    result.getChunkLatencies().size(), is(3));
+    }
+
     @Test
     public void verifyMetaDataKeys() throws Exception {
         List<MetaDataKey> result = getDispatcher().fetchMetaDataKeys().get();
@@ -153,4 +209,13 @@ public class ProcessorIntgTestCases extends AbstractTestCase<VantiqConnector> {
         getConnector().publishTopic("/test/topic", payload);
     }
     
+    @Test
+    public void verifyPublishTopicPreSerialized() throws Exception {
+        byte[] payload = "{\"id\":\"abc\",\"x\":\"def\"}".getBytes("UTF-8");
+
+        // Note that failure would throw an exception
+        getConnector().publishTopic("/test/topic", payload);
+        getConnector().publishTopic("/test/topic", new ByteArrayInputStream(payload));
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.runner;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+import org.mule.modules.vantiq.automation.unit.BulkWriterTestCases;
+import org.mule.modules.vantiq.automation.unit.EventDispatcherTestCases;
+import org.mule.modules.vantiq.automation.unit.HttpClientPoolTestCases;
+import org.mule.modules.vantiq.automation.unit.OperationMetricsTestCases;
+import org.mule.modules.vantiq.automation.unit.PayloadBodyTestCases;
+import org.mule.modules.vantiq.automation.unit.PublishBatcherTestCases;
+import org.mule.modules.vantiq.automation.unit.RecordValidatorTestCases;
+import org.mule.modules.vantiq.automation.unit.StreamingSelectTestCases;
+import org.mule.modules.vantiq.automation.unit.SubscriptionRegistryTestCases;
+import org.mule.modules.vantiq.automation.unit.TokenManagerTestCases;
+import org.mule.modules.vantiq.automation.unit.TypeMetadataCacheTestCases;
+
+/**
+ * Unit tests that run without a Vantiq server.
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ BulkWriterTestCases.class,
+                EventDispatcherTestCases.class,
+                HttpClientPoolTestCases.class,
+                OperationMetricsTestCases.class,
+                PayloadBodyTestCases.class,
+                PublishBatcherTestCases.class,
+                RecordValidatorTestCases.class,
+                StreamingSelectTestCases.class,
+                SubscriptionRegistryTestCases.class,
+                TokenManagerTestCases.class,
+                TypeMetadataCacheTestCases.class })
+
+public class UnitTestSuite {
+
+}
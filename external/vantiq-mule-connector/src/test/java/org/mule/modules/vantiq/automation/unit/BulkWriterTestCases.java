@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.modules.vantiq.batch.BulkResult;
+import org.mule.modules.vantiq.batch.BulkWriter;
+import org.mule.modules.vantiq.metadata.RecordValidator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Unit tests of the chunking, failure reporting and concurrency of bulk writes.
+ */
+public class BulkWriterTestCases {
+
+    /**
+     * Records the chunks written, failing those that hold a record marked as bad
+     */
+    private static class FakeVantiq extends Vantiq {
+
+        private final List<List<?>> inserted = Collections.synchronizedList(new ArrayList<List<?>>());
+        private final List<List<?>> upserted = Collections.synchronizedList(new ArrayList<List<?>>());
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private volatile long delay = 0;
+
+        FakeVantiq() {
+            super("http://localhost");
+        }
+
+        @Override
+        public VantiqResponse insert(String resource, Object records) {
+            return write(this.inserted, (List<?>) records);
+        }
+
+        @Override
+        public VantiqResponse upsert(String resource, Object records) {
+            return write(this.upserted, (List<?>) records);
+        }
+
+        private VantiqResponse write(List<List<?>> chunks, List<?> records) {
+            int count = this.active.incrementAndGet();
+            this.maxActive.accumulateAndGet(count, Math::max);
+            try {
+                if(this.delay > 0) {
+                    Thread.sleep(this.delay);
+                }
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.active.decrementAndGet();
+            }
+            chunks.add(new ArrayList<Object>(records));
+
+            boolean bad = false;
+            for(Object record : records) {
+                bad |= Boolean.TRUE.equals(((Map<?,?>) record).get("bad"));
+            }
+            final boolean success = !bad;
+            return new VantiqResponse() {
+                @Override public boolean isSuccess() {
+                    return success;
+                }
+            };
+        }
+    }
+
+    private static final String SCHEMA =
+        "{\"name\": \"TestType\", \"required\": [\"count\"], \"properties\": {" +
+        "  \"count\": {\"type\": \"Integer\"}}}";
+
+    private final FakeVantiq vantiq = new FakeVantiq();
+    private ExecutorService workers;
+
+    @Before
+    public void setUp() {
+        this.workers = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        this.workers.shutdownNow();
+    }
+
+    private static List<Map<String,Object>> records(int count) {
+        List<Map<String,Object>> records = new ArrayList<Map<String,Object>>();
+        for(int i = 0; i < count; i++) {
+            Map<String,Object> record = new HashMap<String,Object>();
+            record.put("count", i);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<Integer> sizes(List<List<?>> chunks) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        for(List<?> chunk : chunks) {
+            sizes.add(chunk.size());
+        }
+        return sizes;
+    }
+
+    @Test
+    public void verifyChunkBoundaries() throws Exception {
+        BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.INSERT, 4, 1);
+        BulkResult result = writer.write("TestType", records(10).iterator());
+
+        assertThat(sizes(this.vantiq.inserted), is(Arrays.asList(4, 4, 2)));
+        assertThat(this.vantiq.inserted.get(2).get(1), is((Object) records(10).get(9)));
+        assertThat(result.getTotal(), is(10L));
+        assertThat(result.getSucceeded(), is(10L));
+        assertThat(result.getChunkLatencies().size(), is(3));
+    }
+
+    @Test
+    public void verifyUpsertUsesUpsert() throws Exception {
+        BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.UPSERT, 4, 1);
+        writer.write("TestType", records(4).iterator());
+
+        assertThat(this.vantiq.inserted.size(), is(0));
+        assertThat(sizes(this.vantiq.upserted), is(Arrays.asList(4)));
+    }
+
+    @Test
+    public void verifyFailedChunkIndexes() throws Exception {
+        List<Map<String,Object>> records = records(10);
+        records.get(4).put("bad", true);
+
+        BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.INSERT, 3, 2);
+        BulkResult result = writer.write("TestType", records.iterator());
+
+        assertThat(result.getTotal(), is(10L));
+        assertThat(result.getSucceeded(), is(7L));
+        assertThat(result.getFailed(), is(3L));
+        assertThat(result.getFailedIndexes(), is(Arrays.asList(3L, 4L, 5L)));
+    }
+
+    @Test
+    public void verifyRejectedRecordIndexes() throws Exception {
+        RecordValidator validator = RecordValidator.compile("TestType", new Gson().fromJson(SCHEMA, JsonObject.class));
+        List<Map<String,Object>> records = records(10);
+        records.get(2).remove("count");
+        records.get(7).put("count", "seven");
+
+        BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.INSERT, 4, 2, validator);
+        BulkResult result = writer.write("TestType", records.iterator());
+
+        assertThat(result.getTotal(), is(10L));
+        assertThat(result.getSucceeded(), is(8L));
+        assertThat(result.getFailedIndexes(), is(Arrays.asList(2L, 7L)));
+        assertThat(result.getErrors().size(), is(2));
+        assertThat(result.getErrors().get(0).startsWith("record 2:"), is(true));
+        assertThat(sizes(this.vantiq.inserted), is(Arrays.asList(4, 4)));
+    }
+
+    @Test
+    public void verifyConcurrencyIsCapped() throws Exception {
+        this.vantiq.delay = 20;
+        BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.INSERT, 1, 3);
+        BulkResult result = writer.write("TestType", records(20).iterator());
+
+        assertThat(result.getSucceeded(), is(20L));
+        assertThat(this.vantiq.maxActive.get(), lessThanOrEqualTo(3));
+        assertThat(this.vantiq.maxActive.get(), greaterThan(1));
+    }
+
+    @Test
+    public void verifyPayloadTypes() throws Exception {
+        List<Map<String,Object>> records = records(5);
+        Object[] payloads = { records.toArray(), records, records.iterator() };
+        for(Object payload : payloads) {
+            this.vantiq.inserted.clear();
+            BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.INSERT, 2, 1);
+            BulkResult result = writer.write("TestType", BulkWriter.toIterator(payload));
+
+            assertThat(result.getSucceeded(), is(5L));
+            assertThat(sizes(this.vantiq.inserted), is(Arrays.asList(2, 2, 1)));
+        }
+
+        try {
+            BulkWriter.toIterator("not records");
+            fail("A string payload should be rejected");
+        } catch(IllegalArgumentException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void verifyFailedReadWaitsForSentChunks() throws Exception {
+        this.vantiq.delay = 50;
+        final Iterator<Map<String,Object>> records = records(5).iterator();
+        Iterator<Object> failing = new Iterator<Object>() {
+            @Override public boolean hasNext() {
+                return true;
+            }
+
+            @Override public Object next() {
+                if(!records.hasNext()) {
+                    throw new IllegalStateException("Input failed");
+                }
+                return records.next();
+            }
+        };
+
+        BulkWriter writer = new BulkWriter(this.vantiq, this.workers, BulkWriter.Operation.INSERT, 2, 4);
+        try {
+            writer.write("TestType", failing);
+            fail("The read failure should be thrown");
+        } catch(IllegalStateException ex) {
+            // The chunks sent before the failure have completed
+            assertThat(this.vantiq.active.get(), is(0));
+            assertThat(sizes(this.vantiq.inserted), is(Arrays.asList(2, 2)));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.api.MuleEvent;
+import org.mule.api.callback.SourceCallback;
+
+/**
+ * A source callback that collects the payloads passed to the flow.
+ */
+public class CollectingCallback implements SourceCallback {
+
+    private final List<Object> payloads = Collections.synchronizedList(new ArrayList<Object>());
+    private volatile long delayMs = 0;
+    private volatile int failures = 0;
+
+    /**
+     * Makes each call wait for the given time, to simulate a slow flow
+     */
+    public void setDelay(long delayMs) {
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * Makes the next calls throw an exception
+     */
+    public void failNext(int count) {
+        this.failures = count;
+    }
+
+    public List<Object> getPayloads() {
+        synchronized(this.payloads) {
+            return new ArrayList<Object>(this.payloads);
+        }
+    }
+
+    /**
+     * Waits until the given number of payloads has been received
+     */
+    public List<Object> await(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(this.payloads.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return getPayloads();
+    }
+
+    @Override
+    public Object process() throws Exception {
+        return process(null);
+    }
+
+    @Override
+    public Object process(Object payload) throws Exception {
+        if(this.delayMs > 0) {
+            Thread.sleep(this.delayMs);
+        }
+        synchronized(this) {
+            if(this.failures > 0) {
+                this.failures--;
+                throw new Exception("Flow failed");
+            }
+        }
+        this.payloads.add(payload);
+        return payload;
+    }
+
+    @Override
+    public Object process(Object payload, Map<String,Object> properties) throws Exception {
+        return process(payload);
+    }
+
+    @Override
+    public MuleEvent processEvent(MuleEvent event) {
+        return event;
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.modules.vantiq.dispatch.EventDispatcher;
+import org.mule.modules.vantiq.dispatch.OverflowPolicy;
+import org.mule.modules.vantiq.metrics.SubscriptionMetrics;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Unit tests of the overflow policies and ordering of the event dispatcher.
+ */
+public class EventDispatcherTestCases {
+
+    /**
+     * A callback that holds the first event until the gate is opened, so the
+     * tests can fill the queue while the worker is busy.
+     */
+    private static class GatedCallback extends CollectingCallback {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public Object process(Object payload) throws Exception {
+            this.started.countDown();
+            this.gate.await();
+            return super.process(payload);
+        }
+
+        void awaitStarted() throws InterruptedException {
+            this.started.await();
+        }
+
+        void open() {
+            this.gate.countDown();
+        }
+    }
+
+    private File spillDirectory;
+    private SubscriptionMetrics metrics;
+    private EventDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws IOException {
+        this.spillDirectory = Files.createTempDirectory("vantiq-dispatch-test").toFile();
+        this.metrics = new SubscriptionMetrics();
+    }
+
+    @After
+    public void tearDown() {
+        if(this.dispatcher != null) {
+            this.dispatcher.close();
+        }
+        File[] files = this.spillDirectory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        this.spillDirectory.delete();
+    }
+
+    private EventDispatcher create(CollectingCallback callback, int queueSize, int workers, OverflowPolicy policy, String orderingKey) {
+        this.dispatcher = new EventDispatcher("topics//test", callback, queueSize, workers, policy,
+                                              this.spillDirectory, orderingKey, this.metrics);
+        return this.dispatcher;
+    }
+
+    private static Map<String,Object> event(String id, int seq) {
+        Map<String,Object> value = new HashMap<String,Object>();
+        value.put("id", id);
+        value.put("seq", seq);
+        Map<String,Object> event = new HashMap<String,Object>();
+        event.put("value", value);
+        return event;
+    }
+
+    @Test
+    public void verifyBlockDeliversAllEventsInOrder() throws Exception {
+        CollectingCallback callback = new CollectingCallback();
+        callback.setDelay(20);
+        EventDispatcher dispatcher = create(callback, 2, 1, OverflowPolicy.BLOCK, null);
+
+        List<Object> expected = new ArrayList<Object>();
+        for(int i = 0; i < 10; i++) {
+            expected.add(i);
+            dispatcher.dispatch(i);
+        }
+
+        assertThat(callback.await(10), is(expected));
+        assertThat(this.metrics.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void verifyFlowErrorsAreCounted() throws Exception {
+        CollectingCallback callback = new CollectingCallback();
+        callback.failNext(2);
+        EventDispatcher dispatcher = create(callback, 4, 1, OverflowPolicy.BLOCK, null);
+        for(int i = 0; i < 3; i++) {
+            dispatcher.dispatch(i);
+        }
+
+        assertThat(callback.await(1).size(), is(1));
+        assertThat(this.metrics.getErrorCount(), is(2L));
+    }
+
+    @Test
+    public void verifyBlockIsReleasedOnClose() throws Exception {
+        GatedCallback callback = new GatedCallback();
+        final EventDispatcher dispatcher = create(callback, 1, 1, OverflowPolicy.BLOCK, null);
+        dispatcher.dispatch(0);
+        callback.awaitStarted();
+        dispatcher.dispatch(1);
+
+        // The queue is full and the worker is stuck, so this waits
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(2);
+            }
+        });
+        blocked.start();
+        blocked.join(300);
+        assertThat(blocked.isAlive(), is(true));
+
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.close();
+            }
+        });
+        closer.start();
+        blocked.join(2000);
+        assertThat(blocked.isAlive(), is(false));
+        assertThat(this.metrics.getDroppedCount(), is(1L));
+
+        callback.open();
+        closer.join();
+    }
+
+    @Test
+    public void verifyDropOldest() throws Exception {
+        GatedCallback callback = new GatedCallback();
+        EventDispatcher dispatcher = create(callback, 2, 1, OverflowPolicy.DROP_OLDEST, null);
+        dispatcher.dispatch(0);
+        callback.awaitStarted();
+        for(int i = 1; i <= 5; i++) {
+            dispatcher.dispatch(i);
+        }
+        assertThat(this.metrics.getQueueDepth(), is(2L));
+        assertThat(this.metrics.getDroppedCount(), is(3L));
+
+        callback.open();
+        List<Object> expected = new ArrayList<Object>();
+        expected.add(0);
+        expected.add(4);
+        expected.add(5);
+        assertThat(callback.await(3), is(expected));
+    }
+
+    @Test
+    public void verifyQueueSizeIsRoundedUpPerLane() throws Exception {
+        GatedCallback callback = new GatedCallback();
+        EventDispatcher dispatcher = create(callback, 3, 2, OverflowPolicy.DROP_OLDEST, null);
+
+        // Occupy both workers, leaving two lanes of two events each
+        dispatcher.dispatch(0);
+        dispatcher.dispatch(1);
+        while(this.metrics.getQueueDepth() > 0) {
+            Thread.sleep(5);
+        }
+        for(int i = 2; i < 6; i++) {
+            dispatcher.dispatch(i);
+        }
+        assertThat(this.metrics.getQueueDepth(), is(4L));
+        assertThat(this.metrics.getDroppedCount(), is(0L));
+
+        callback.open();
+        assertThat(callback.await(6).size(), is(6));
+    }
+
+    @Test
+    public void verifySpillPreservesOrderAsJson() throws Exception {
+        Gson gson = new Gson();
+        GatedCallback callback = new GatedCallback();
+        EventDispatcher dispatcher = create(callback, 2, 1, OverflowPolicy.SPILL, null);
+
+        List<Object> expected = new ArrayList<Object>();
+        for(int i = 0; i < 9; i++) {
+            // Parsed the way the SDK parses subscription messages
+            expected.add(gson.fromJson("{\"value\": {\"seq\": " + i + ", \"tags\": [\"a\"], \"ok\": true}}", Object.class));
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("seq", 9);
+        expected.add(json);
+
+        dispatcher.dispatch(expected.get(0));
+        callback.awaitStarted();
+        for(int i = 1; i < expected.size(); i++) {
+            dispatcher.dispatch(expected.get(i));
+        }
+        assertThat(this.metrics.getSpilledCount(), is(7L));
+        assertThat(this.metrics.getQueueDepth(), is(9L));
+
+        callback.open();
+        List<Object> payloads = callback.await(expected.size());
+        assertThat(payloads.subList(0, 9), is(expected.subList(0, 9)));
+
+        // Spilled events are replayed as plain JSON values
+        Map<?,?> replayed = (Map<?,?>) ((Map<?,?>) payloads.get(8)).get("value");
+        assertThat(replayed.get("seq"), instanceOf(Double.class));
+        assertThat(replayed.get("tags"), instanceOf(List.class));
+        assertThat(replayed.get("ok"), instanceOf(Boolean.class));
+        assertThat(payloads.get(9), instanceOf(Map.class));
+        assertThat(((Map<?,?>) payloads.get(9)).get("seq"), is((Object) 9.0));
+        assertThat(this.metrics.getQueueDepth(), is(0L));
+    }
+
+    @Test
+    public void verifyOrderingKeyKeepsOrderPerKey() throws Exception {
+        CollectingCallback callback = new CollectingCallback();
+        callback.setDelay(1);
+        EventDispatcher dispatcher = create(callback, 64, 4, OverflowPolicy.BLOCK, "value.id");
+
+        int count = 200;
+        for(int i = 0; i < count; i++) {
+            dispatcher.dispatch(event("key" + (i % 5), i));
+        }
+
+        Map<Object,Integer> last = new HashMap<Object,Integer>();
+        for(Object payload : callback.await(count)) {
+            Map<?,?> value = (Map<?,?>) ((Map<?,?>) payload).get("value");
+            Integer previous = last.put(value.get("id"), (Integer) value.get("seq"));
+            if(previous != null) {
+                assertThat(previous, lessThan((Integer) value.get("seq")));
+            }
+        }
+        assertThat(callback.getPayloads().size(), is(count));
+        assertThat(last.size(), is(5));
+    }
+}
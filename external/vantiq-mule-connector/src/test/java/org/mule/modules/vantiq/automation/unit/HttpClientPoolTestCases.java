@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.mule.modules.vantiq.http.HttpClientPool;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * Unit tests of the HTTP connection pool.
+ */
+public class HttpClientPoolTestCases {
+
+    private static final Interceptor interceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return chain.proceed(chain.request());
+        }
+    };
+
+    @Test
+    public void verifyConfigureAddsInterceptors() {
+        HttpClientPool.Lease lease = HttpClientPool.acquire("http://localhost", false, 5, 300000, 0);
+        try {
+            OkHttpClient client = lease.configure(new OkHttpClient.Builder(), interceptor).build();
+            assertThat(client.interceptors().size(), is(1));
+            assertThat(client.interceptors().get(0), is(interceptor));
+        } finally {
+            lease.release();
+        }
+
+        // A request limit adds an interceptor for synchronous calls
+        lease = HttpClientPool.acquire("http://localhost", false, 5, 300000, 4);
+        try {
+            OkHttpClient client = lease.configure(new OkHttpClient.Builder(), interceptor).build();
+            assertThat(client.interceptors().size(), is(2));
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Test
+    public void verifySharedPoolIsReferenceCounted() {
+        HttpClientPool.Lease first = HttpClientPool.acquire("http://shared", true, 5, 300000, 0);
+        HttpClientPool.Lease second = HttpClientPool.acquire("http://shared", true, 5, 300000, 0);
+        HttpClientPool.Lease other = HttpClientPool.acquire("http://shared", false, 5, 300000, 0);
+        assertThat(first == second, is(true));
+        assertThat(first == other, is(false));
+
+        first.release();
+        other.release();
+        assertThat(HttpClientPool.acquire("http://shared", true, 5, 300000, 0) == second, is(true));
+        second.release();
+        second.release();
+
+        // Once the last lease is released, a new pool is created
+        HttpClientPool.Lease third = HttpClientPool.acquire("http://shared", true, 5, 300000, 0);
+        assertThat(third == first, is(false));
+        third.release();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.error.VantiqValidationException;
+import org.mule.modules.vantiq.metrics.OperationMetrics;
+
+/**
+ * Unit tests of the counts and error keys of the operation metrics.
+ */
+public class OperationMetricsTestCases {
+
+    @Test
+    public void verifyOperationMetrics() throws Exception {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.start().stop();
+
+        OperationMetrics.Sample sample = metrics.start();
+        sample.failed(new VantiqException(404, "Not Found"));
+        sample.stop();
+
+        sample = metrics.start();
+        sample.failed(new VantiqValidationException("TestType", Collections.singletonList("Invalid record")));
+        sample.stop();
+
+        assertThat("Count",       metrics.getCount(),      is(3L));
+        assertThat("Error count", metrics.getErrorCount(), is(2L));
+        assertThat("HTTP status", metrics.getErrorsByStatus().get("404"),        is(1L));
+        assertThat("Validation",  metrics.getErrorsByStatus().get("validation"), is(1L));
+    }
+
+    @Test
+    public void verifyIOFailuresAreNetworkErrors() throws Exception {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.failed(new SocketTimeoutException("timeout"));
+        metrics.failed(new UncheckedIOException(new IOException("Connection reset")));
+
+        assertThat("Error count", metrics.getErrorCount(), is(2L));
+        assertThat("Network",     metrics.getErrorsByStatus().get("network"), is(2L));
+    }
+
+    @Test
+    public void verifyOtherFailuresAreNotNetworkErrors() throws Exception {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.failed(new IllegalStateException("Not connected"));
+        metrics.failed(new VantiqException(0, "No status"));
+
+        assertThat("Error count", metrics.getErrorCount(), is(2L));
+        assertThat("Other",       metrics.getErrorsByStatus().get("other"),   is(2L));
+        assertThat("Network",     metrics.getErrorsByStatus().containsKey("network"), is(false));
+    }
+}
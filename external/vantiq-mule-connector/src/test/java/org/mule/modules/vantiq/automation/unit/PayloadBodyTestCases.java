@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.modules.vantiq.publish.PayloadBody;
+
+import com.google.gson.Gson;
+
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+
+/**
+ * Unit tests of the JSON, pass-through and compressed bodies of streamed publishes.
+ */
+public class PayloadBodyTestCases {
+
+    private static final String JSON = "{\"name\":\"caf\u00e9\",\"values\":[1,2,3]}";
+
+    /**
+     * Records whether the stream was closed
+     */
+    private static class TrackingInputStream extends ByteArrayInputStream {
+
+        private boolean closed = false;
+
+        TrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.closed = true;
+            super.close();
+        }
+    }
+
+    private static Map<String,Object> payload() {
+        List<Object> values = new ArrayList<Object>();
+        values.add(1);
+        values.add(2);
+        values.add(3);
+        Map<String,Object> payload = new LinkedHashMap<String,Object>();
+        payload.put("name", "caf\u00e9");
+        payload.put("values", values);
+        return payload;
+    }
+
+    /**
+     * Writes the body and reads it back, decompressing it if needed
+     */
+    private static String write(PayloadBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        if(body.isGzip()) {
+            return Okio.buffer(new GzipSource(buffer)).readUtf8();
+        }
+        return buffer.readUtf8();
+    }
+
+    @Test
+    public void verifyPayloadIsConvertedWithGson() throws Exception {
+        assertThat(new Gson().toJson(payload()), is(JSON));
+        long length = JSON.getBytes("UTF-8").length;
+
+        for(boolean gzip : new boolean[] { false, true }) {
+            PayloadBody body = new PayloadBody(payload(), gzip);
+            assertThat(body.contentLength(), is(-1L));
+            assertThat(write(body), is(JSON));
+            assertThat(body.getBytesWritten(), is(length));
+        }
+    }
+
+    @Test
+    public void verifyByteArrayIsSentAsIs() throws Exception {
+        byte[] json = JSON.getBytes("UTF-8");
+        assertThat(PayloadBody.isPreSerialized(json), is(true));
+
+        PayloadBody body = new PayloadBody(json, false);
+        assertThat(body.contentLength(), is((long) json.length));
+        assertThat(write(body), is(JSON));
+        assertThat(body.getBytesWritten(), is((long) json.length));
+
+        body = new PayloadBody(json, true);
+        assertThat(body.contentLength(), is(-1L));
+        assertThat(write(body), is(JSON));
+    }
+
+    @Test
+    public void verifyInputStreamIsSentAsIsAndClosed() throws Exception {
+        byte[] json = JSON.getBytes("UTF-8");
+
+        for(boolean gzip : new boolean[] { false, true }) {
+            TrackingInputStream in = new TrackingInputStream(json);
+            assertThat(PayloadBody.isPreSerialized(in), is(true));
+
+            PayloadBody body = new PayloadBody(in, gzip);
+            assertThat(body.contentLength(), is(-1L));
+            assertThat(write(body), is(JSON));
+            assertThat(body.getBytesWritten(), is((long) json.length));
+            assertThat(in.closed, is(true));
+        }
+    }
+
+    @Test
+    public void verifyOtherPayloadsAreNotPreSerialized() {
+        assertThat(PayloadBody.isPreSerialized(payload()), is(false));
+        assertThat(PayloadBody.isPreSerialized(JSON), is(false));
+        assertThat(PayloadBody.isPreSerialized(null), is(false));
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mule.modules.vantiq.error.VantiqException;
+import org.mule.modules.vantiq.publish.PublishBatcher;
+import org.mule.modules.vantiq.publish.TopicPublisher;
+
+/**
+ * Unit tests of the coalescing, flushing and failure isolation of batched publishes.
+ */
+public class PublishBatcherTestCases {
+
+    /**
+     * Records the content of each publish, rejecting those that hold a record
+     * marked as bad
+     */
+    private static class FakePublisher implements TopicPublisher {
+
+        private final List<List<?>> published = Collections.synchronizedList(new ArrayList<List<?>>());
+        private volatile Error error = null;
+
+        @Override
+        public void publish(String topic, Object payload) throws IOException {
+            if(this.error != null) {
+                throw this.error;
+            }
+            List<?> content = (List<?>) ((Map<?,?>) payload).get("content");
+            this.published.add(new ArrayList<Object>(content));
+            for(Object record : content) {
+                if(Boolean.TRUE.equals(((Map<?,?>) record).get("bad"))) {
+                    throw new VantiqException(400, "Invalid record");
+                }
+            }
+        }
+
+        List<List<?>> getPublished() {
+            synchronized(this.published) {
+                return new ArrayList<List<?>>(this.published);
+            }
+        }
+    }
+
+    /**
+     * Publishes records on its own thread and keeps the outcome
+     */
+    private static class Caller extends Thread {
+
+        private final PublishBatcher batcher;
+        private final List<Map<String,Object>> records;
+        private volatile Throwable failure = null;
+
+        Caller(PublishBatcher batcher, List<Map<String,Object>> records) {
+            this.batcher = batcher;
+            this.records = records;
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.batcher.publish("/test/topic", "TestType", this.records);
+            } catch(Throwable ex) {
+                this.failure = ex;
+            }
+        }
+
+        Throwable finish() throws InterruptedException {
+            join(5000);
+            assertThat(isAlive(), is(false));
+            return this.failure;
+        }
+    }
+
+    private final FakePublisher publisher = new FakePublisher();
+    private PublishBatcher batcher;
+
+    @After
+    public void tearDown() {
+        if(this.batcher != null) {
+            this.batcher.close();
+        }
+    }
+
+    private PublishBatcher create(int maxBatchSize, long maxLingerMs, long maxBatchBytes) {
+        this.batcher = new PublishBatcher(this.publisher, maxBatchSize, maxLingerMs, maxBatchBytes, 2);
+        return this.batcher;
+    }
+
+    private static List<Map<String,Object>> records(int first, int count) {
+        List<Map<String,Object>> records = new ArrayList<Map<String,Object>>();
+        for(int i = first; i < first + count; i++) {
+            Map<String,Object> record = new HashMap<String,Object>();
+            record.put("id", "record-" + (i % 10));
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void verifyBatchesAreLimitedBySize() throws Exception {
+        PublishBatcher batcher = create(4, 60000, 0);
+
+        List<Caller> callers = new ArrayList<Caller>();
+        for(int i = 0; i < 8; i++) {
+            callers.add(new Caller(batcher, records(i, 1)));
+        }
+        for(Caller caller : callers) {
+            assertThat(caller.finish(), is((Throwable) null));
+        }
+
+        List<List<?>> published = this.publisher.getPublished();
+        assertThat(published.size(), is(2));
+        assertThat(published.get(0).size(), is(4));
+        assertThat(published.get(1).size(), is(4));
+    }
+
+    @Test
+    public void verifyBatchesAreLimitedByBytes() throws Exception {
+        // Each record is {"id":"record-0"}, 17 characters plus a separator
+        PublishBatcher batcher = create(100, 60000, 36);
+
+        List<Caller> callers = new ArrayList<Caller>();
+        for(int i = 0; i < 4; i++) {
+            callers.add(new Caller(batcher, records(i, 1)));
+        }
+        for(Caller caller : callers) {
+            assertThat(caller.finish(), is((Throwable) null));
+        }
+
+        List<List<?>> published = this.publisher.getPublished();
+        assertThat(published.size(), is(2));
+        assertThat(published.get(0).size(), is(2));
+        assertThat(published.get(1).size(), is(2));
+    }
+
+    @Test
+    public void verifyLingerSendsPartialBatch() throws Exception {
+        PublishBatcher batcher = create(100, 50, 0);
+
+        long start = System.currentTimeMillis();
+        batcher.publish("/test/topic", "TestType", records(0, 3));
+        assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(40L));
+
+        List<List<?>> published = this.publisher.getPublished();
+        assertThat(published.size(), is(1));
+        assertThat(published.get(0).size(), is(3));
+    }
+
+    @Test
+    public void verifyOnlyRejectedCallerFails() throws Exception {
+        PublishBatcher batcher = create(3, 60000, 0);
+
+        List<Map<String,Object>> bad = records(2, 1);
+        bad.get(0).put("bad", true);
+        Caller good = new Caller(batcher, records(0, 2));
+        Caller rejected = new Caller(batcher, bad);
+
+        assertThat(good.finish(), is((Throwable) null));
+        Throwable failure = rejected.finish();
+        assertThat(failure, instanceOf(VantiqException.class));
+        assertThat(((VantiqException) failure).getStatusCode(), is(400));
+
+        // The whole batch, then the records of each caller on their own
+        List<List<?>> published = this.publisher.getPublished();
+        assertThat(published.size(), is(3));
+        assertThat(published.get(0).size(), is(3));
+    }
+
+    @Test
+    public void verifyCloseSendsOpenBatches() throws Exception {
+        PublishBatcher batcher = create(100, 60000, 0);
+
+        Caller caller = new Caller(batcher, records(0, 2));
+        while(caller.getState() != Thread.State.WAITING) {
+            Thread.sleep(5);
+        }
+        assertThat(this.publisher.getPublished().size(), is(0));
+
+        batcher.close();
+        assertThat(caller.finish(), is((Throwable) null));
+        assertThat(this.publisher.getPublished().size(), is(1));
+
+        try {
+            batcher.publish("/test/topic", "TestType", records(0, 1));
+            fail("Publish after close should fail");
+        } catch(IOException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void verifyCallerIsReleasedOnError() throws Exception {
+        PublishBatcher batcher = create(1, 60000, 0);
+        this.publisher.error = new AssertionError("Publisher failed");
+
+        try {
+            batcher.publish("/test/topic", "TestType", records(0, 1));
+            fail("Publish should fail");
+        } catch(IOException ex) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.modules.vantiq.error.VantiqValidationException;
+import org.mule.modules.vantiq.metadata.RecordValidator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Unit tests of the checks and conversions of the record validator.
+ */
+public class RecordValidatorTestCases {
+
+    private static final String SCHEMA =
+        "{\"name\": \"TestType\", \"required\": [\"count\"], \"properties\": {" +
+        "  \"count\": {\"type\": \"Integer\"}," +
+        "  \"at\": {\"type\": \"DateTime\"}," +
+        "  \"ars_createdAt\": {\"type\": \"DateTime\", \"system\": true}}}";
+
+    private final RecordValidator validator =
+        RecordValidator.compile("TestType", new Gson().fromJson(SCHEMA, JsonObject.class));
+
+    private static Map<String,Object> record(String prop, Object value) {
+        Map<String,Object> record = new HashMap<String,Object>();
+        record.put("count", 1);
+        record.put(prop, value);
+        return record;
+    }
+
+    private List<String> errors(Object record) {
+        try {
+            this.validator.normalize(record);
+        } catch(VantiqValidationException ex) {
+            return ex.getErrors();
+        }
+        fail("Record should have been rejected: " + record);
+        return null;
+    }
+
+    @Test
+    public void verifyTestTypeIsNormalized() throws Exception {
+        InputStream stream = this.getClass().getResourceAsStream("/TestType.json");
+        JsonObject dataType = new Gson().fromJson(new InputStreamReader(stream, "UTF-8"), JsonObject.class);
+        RecordValidator validator = RecordValidator.compile(dataType.get("name").getAsString(), dataType);
+
+        // Check that values are converted to the Vantiq representation
+        Map<String,Object> record = new HashMap<String,Object>();
+        record.put("aString",   "text");
+        record.put("aDateTime", 0L);
+        record.put("aInteger",  "42");
+        record.put("aBoolean",  "true");
+        record.put("sysField",  "dropped");
+        Map<String,Object> normalized = validator.normalize(record);
+        assertThat("DateTime", normalized.get("aDateTime"), is((Object) "1970-01-01T00:00:00.000Z"));
+        assertThat("Integer",  normalized.get("aInteger"),  is((Object) 42L));
+        assertThat("Boolean",  normalized.get("aBoolean"),  is((Object) Boolean.TRUE));
+        assertThat("System field", normalized.containsKey("sysField"), is(false));
+
+        // Check that invalid values are reported
+        List<String> errors = new ArrayList<String>();
+        Map<String,Object> invalid = new HashMap<String,Object>();
+        invalid.put("aInteger", "not a number");
+        assertThat("Invalid record", validator.normalize(invalid, 0, errors), is(nullValue()));
+        assertThat("Error reported", errors, not(empty()));
+    }
+
+    @Test
+    public void verifySystemPropertiesAreDropped() {
+        assertThat(this.validator.normalize(record("ars_createdAt", null)).containsKey("ars_createdAt"), is(false));
+        assertThat(this.validator.normalize(record("_id", null)).containsKey("_id"), is(false));
+        assertThat(this.validator.normalize(record("ars_createdAt", "2016-01-31T12:00:00Z")).containsKey("ars_createdAt"), is(false));
+    }
+
+    @Test
+    public void verifyDateTimeMustBeIso8601() {
+        assertThat(this.validator.normalize(record("at", "2016-01-31T12:00:00Z")).get("at"), is((Object) "2016-01-31T12:00:00Z"));
+        assertThat(this.validator.normalize(record("at", "2016-01-31T12:00:00.123+01:00")).get("at"), is((Object) "2016-01-31T12:00:00.123+01:00"));
+        assertThat(this.validator.normalize(record("at", 0L)).get("at"), is((Object) "1970-01-01T00:00:00.000Z"));
+        assertThat(errors(record("at", "yesterday")).size(), is(1));
+        assertThat(errors(record("at", "2016-01-31")).size(), is(1));
+    }
+
+    @Test
+    public void verifyIntegerOutOfRangeIsRejected() {
+        assertThat(this.validator.normalize(record("count", 3.0)).get("count"), is((Object) 3L));
+        assertThat(errors(record("count", 1e19)).size(), is(1));
+        assertThat(errors(record("count", -0x1p63)).size(), is(1));
+        assertThat(errors(record("count", Double.POSITIVE_INFINITY)).size(), is(1));
+        assertThat(errors(record("count", Double.NaN)).size(), is(1));
+    }
+
+    @Test
+    public void verifyNullListIsRejected() {
+        try {
+            this.validator.normalizeAll(null);
+            fail("Null list should have been rejected");
+        } catch(VantiqValidationException ex) {
+            assertThat(ex.getDataType(), is("TestType"));
+            assertThat(ex.getErrors().size(), is(1));
+        }
+    }
+}
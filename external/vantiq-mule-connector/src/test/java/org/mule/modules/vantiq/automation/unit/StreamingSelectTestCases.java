@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.modules.vantiq.select.StreamingSelect;
+import org.mule.modules.vantiq.select.Watermark;
+import org.mule.util.store.SimpleMemoryObjectStore;
+
+import com.google.gson.JsonObject;
+
+import io.vantiq.client.SortSpec;
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Unit tests of the paging and watermark tracking of the streaming select.
+ */
+public class StreamingSelectTestCases {
+
+    private static final String TYPE = "TestType";
+    private static final String KEY = "test-watermark";
+
+    /**
+     * Serves selects from an in-memory list of records, honoring the
+     * watermark condition, the sort and the limit.  Records with equal
+     * watermark values are returned in a different order on each call.
+     */
+    private static class FakeVantiq extends Vantiq {
+
+        private final String field;
+        private final List<JsonObject> records = new ArrayList<JsonObject>();
+        private final List<Object> conditions = new ArrayList<Object>();
+        private int calls = 0;
+
+        FakeVantiq(String field) {
+            super("http://localhost");
+            this.field = field;
+        }
+
+        void add(String id, long value) {
+            JsonObject record = new JsonObject();
+            record.addProperty("_id", id);
+            record.addProperty(this.field, value);
+            this.records.add(record);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public VantiqResponse select(String resource, List<String> props, Object where, SortSpec sort, long limit) {
+            Map<String,Object> condition = (Map<String,Object>) ((Map<String,Object>) where).get(this.field);
+            this.conditions.add(condition.get("$gte"));
+            Number from = (Number) condition.get("$gte");
+
+            final boolean reversed = (this.calls++ % 2) == 1;
+            List<JsonObject> matches = new ArrayList<JsonObject>();
+            for(JsonObject record : this.records) {
+                if(from == null || record.get(this.field).getAsLong() >= from.longValue()) {
+                    matches.add(record);
+                }
+            }
+            Collections.sort(matches, new Comparator<JsonObject>() {
+                @Override public int compare(JsonObject a, JsonObject b) {
+                    int result = Long.compare(a.get(field).getAsLong(), b.get(field).getAsLong());
+                    if(result == 0) {
+                        result = a.get("_id").getAsString().compareTo(b.get("_id").getAsString());
+                        return reversed ? -result : result;
+                    }
+                    return result;
+                }
+            });
+
+            final List<JsonObject> page = new ArrayList<JsonObject>(matches.subList(0, (int) Math.min(limit, matches.size())));
+            return new VantiqResponse() {
+                @Override public boolean isSuccess() {
+                    return true;
+                }
+                @Override public Object getBody() {
+                    return page;
+                }
+            };
+        }
+    }
+
+    private static List<String> ids(List<Object> payloads) {
+        List<String> ids = new ArrayList<String>();
+        for(Object payload : payloads) {
+            ids.add(((JsonObject) payload).get("_id").getAsString());
+        }
+        return ids;
+    }
+
+    private static List<String> expected(String... ids) {
+        List<String> result = new ArrayList<String>();
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    @Test
+    public void verifyPageBoundaryInEqualValues() throws Exception {
+        FakeVantiq vantiq = new FakeVantiq("seq");
+        vantiq.add("a", 1);
+        vantiq.add("b", 1);
+        vantiq.add("c", 2);
+        vantiq.add("d", 2);
+        vantiq.add("e", 2);
+        vantiq.add("f", 2);
+        vantiq.add("g", 2);
+        vantiq.add("h", 3);
+        vantiq.add("i", 3);
+        vantiq.add("j", 4);
+
+        // Pages of 3 records end inside the runs of equal values
+        SimpleMemoryObjectStore<Watermark> store = new SimpleMemoryObjectStore<Watermark>();
+        StreamingSelect select = new StreamingSelect(vantiq, store, KEY, TYPE, null, null, "seq", 3, 1);
+        CollectingCallback callback = new CollectingCallback();
+        select.poll(callback);
+
+        List<Object> emitted = callback.getPayloads();
+        assertThat("Every record once", new HashSet<String>(ids(emitted)).size(), is(10));
+        assertThat("No duplicates", emitted.size(), is(10));
+        for(int i = 1; i < emitted.size(); i++) {
+            long previous = ((JsonObject) emitted.get(i - 1)).get("seq").getAsLong();
+            long current = ((JsonObject) emitted.get(i)).get("seq").getAsLong();
+            assertThat("Ordered by watermark", previous <= current, is(true));
+        }
+
+        // The watermark keeps the numeric type of the field
+        assertThat("Numeric watermark", store.retrieve(KEY).getValue(), instanceOf(Long.class));
+        assertThat("Numeric condition", vantiq.conditions.get(vantiq.conditions.size() - 1), instanceOf(Long.class));
+
+        // Nothing new, so nothing is emitted again
+        callback = new CollectingCallback();
+        select.poll(callback);
+        assertThat("No records re-emitted", callback.getPayloads().size(), is(0));
+    }
+
+    @Test
+    public void verifyResumeFromPersistedWatermark() throws Exception {
+        FakeVantiq vantiq = new FakeVantiq("seq");
+        vantiq.add("a", 1);
+        vantiq.add("b", 2);
+        vantiq.add("c", 2);
+
+        SimpleMemoryObjectStore<Watermark> store = new SimpleMemoryObjectStore<Watermark>();
+        CollectingCallback callback = new CollectingCallback();
+        new StreamingSelect(vantiq, store, KEY, TYPE, null, null, "seq", 2, 1).poll(callback);
+        assertThat("First poll", callback.getPayloads().size(), is(3));
+
+        // A record sharing the last watermark value and later records are added
+        vantiq.add("d", 2);
+        vantiq.add("e", 10);
+        vantiq.add("f", 9);
+
+        // A new select, as after a restart, continues from the stored watermark
+        callback = new CollectingCallback();
+        new StreamingSelect(vantiq, store, KEY, TYPE, null, null, "seq", 2, 2).poll(callback);
+        List<Object> pages = callback.getPayloads();
+        assertThat("Pages emitted", pages.size(), is(2));
+
+        List<Object> records = new ArrayList<Object>();
+        for(Object page : pages) {
+            records.addAll((List<?>) page);
+        }
+        assertThat("Only new records", ids(records), is(expected("d", "f", "e")));
+        assertThat("Watermark advanced", store.retrieve(KEY).getValue(), is((Object) 10L));
+    }
+
+    @Test
+    public void verifyFailedCallbackIsRetried() throws Exception {
+        FakeVantiq vantiq = new FakeVantiq("seq");
+        vantiq.add("a", 1);
+        vantiq.add("b", 2);
+        vantiq.add("c", 3);
+
+        SimpleMemoryObjectStore<Watermark> store = new SimpleMemoryObjectStore<Watermark>();
+        StreamingSelect select = new StreamingSelect(vantiq, store, KEY, TYPE, null, null, "seq", 10, 1);
+
+        // The second record fails, so the next poll starts from it
+        FailingCallback failing = new FailingCallback("b");
+        try {
+            select.poll(failing);
+        } catch(Exception ex) {
+            // Expected
+        }
+        assertThat("Emitted before failure", ids(failing.getPayloads()), is(expected("a")));
+
+        CollectingCallback callback = new CollectingCallback();
+        select.poll(callback);
+        assertThat("Retried from failure", ids(callback.getPayloads()), is(expected("b", "c")));
+    }
+
+    /**
+     * Fails on the record with the given id
+     */
+    private static class FailingCallback extends CollectingCallback {
+
+        private final String failOn;
+
+        FailingCallback(String failOn) {
+            this.failOn = failOn;
+        }
+
+        @Override
+        public Object process(Object payload) throws Exception {
+            if(((JsonObject) payload).get("_id").getAsString().equals(this.failOn)) {
+                throw new Exception("Flow failed");
+            }
+            return super.process(payload);
+        }
+    }
+}
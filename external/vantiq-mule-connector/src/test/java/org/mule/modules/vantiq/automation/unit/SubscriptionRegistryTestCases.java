@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.modules.vantiq.metrics.ConnectorMetrics;
+import org.mule.modules.vantiq.metrics.SubscriptionMetrics;
+import org.mule.modules.vantiq.subscription.SubscriptionRegistry;
+
+import io.vantiq.client.SubscriptionCallback;
+import io.vantiq.client.SubscriptionMessage;
+import io.vantiq.client.Vantiq;
+
+/**
+ * Unit tests of the listener fan-out and resubscription of the subscription registry.
+ */
+public class SubscriptionRegistryTestCases {
+
+    private static final String TOPIC = "/test/topic";
+
+    /**
+     * Records the server subscriptions made through the SDK
+     */
+    private static class FakeVantiq extends Vantiq {
+
+        private final List<SubscriptionCallback> subscriptions = new ArrayList<SubscriptionCallback>();
+        private int unsubscribeAllCount = 0;
+
+        FakeVantiq() {
+            super("http://localhost");
+        }
+
+        @Override
+        public synchronized void subscribe(String resource, String id, TypeOperation op, SubscriptionCallback callback) {
+            this.subscriptions.add(callback);
+        }
+
+        @Override
+        public synchronized void unsubscribeAll() {
+            this.unsubscribeAllCount++;
+        }
+
+        synchronized List<SubscriptionCallback> getSubscriptions() {
+            return new ArrayList<SubscriptionCallback>(this.subscriptions);
+        }
+
+        synchronized int getUnsubscribeAllCount() {
+            return this.unsubscribeAllCount;
+        }
+
+        /**
+         * Waits until the given number of server subscriptions has been made
+         */
+        List<SubscriptionCallback> await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(getSubscriptions().size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            return getSubscriptions();
+        }
+    }
+
+    /**
+     * Records the callbacks passed to a listener
+     */
+    private static class RecordingListener implements SubscriptionCallback {
+
+        private final List<SubscriptionMessage> messages = new ArrayList<SubscriptionMessage>();
+        private int connects = 0;
+
+        @Override
+        public synchronized void onConnect() {
+            this.connects++;
+        }
+
+        @Override
+        public synchronized void onMessage(SubscriptionMessage message) {
+            this.messages.add(message);
+        }
+
+        @Override
+        public void onError(String error) {
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+        }
+
+        synchronized int getConnects() {
+            return this.connects;
+        }
+
+        synchronized List<SubscriptionMessage> getMessages() {
+            return new ArrayList<SubscriptionMessage>(this.messages);
+        }
+    }
+
+    private FakeVantiq vantiq;
+    private ConnectorMetrics metrics;
+    private SubscriptionRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.vantiq = new FakeVantiq();
+        this.metrics = ConnectorMetrics.acquire("http://localhost", "registry-test", false);
+        this.registry = new SubscriptionRegistry(this.vantiq, this.metrics, 1, 10);
+    }
+
+    @After
+    public void tearDown() {
+        this.registry.close();
+        this.metrics.release();
+    }
+
+    @Test
+    public void verifyListenersShareServerSubscription() throws Exception {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        SubscriptionRegistry.Subscription firstSubscription =
+            this.registry.subscribe(Vantiq.SystemResources.TOPICS, TOPIC, null, first);
+        this.registry.subscribe(Vantiq.SystemResources.TOPICS, TOPIC, null, second);
+
+        List<SubscriptionCallback> subscriptions = this.vantiq.getSubscriptions();
+        assertThat(subscriptions.size(), is(1));
+        SubscriptionMetrics pathMetrics = this.metrics.subscription(firstSubscription.getPath());
+        assertThat(pathMetrics.getListenerCount(), is(2));
+
+        SubscriptionMessage message = new SubscriptionMessage();
+        subscriptions.get(0).onConnect();
+        subscriptions.get(0).onMessage(message);
+        assertThat(first.getConnects(), is(1));
+        assertThat(second.getConnects(), is(1));
+        assertThat(first.getMessages().size(), is(1));
+        assertThat(second.getMessages().get(0) == message, is(true));
+
+        // A listener added to a connected path is told it is connected
+        RecordingListener third = new RecordingListener();
+        this.registry.subscribe(Vantiq.SystemResources.TOPICS, TOPIC, null, third);
+        assertThat(third.getConnects(), is(1));
+        assertThat(this.vantiq.getSubscriptions().size(), is(1));
+
+        firstSubscription.unsubscribe();
+        firstSubscription.unsubscribe();
+        assertThat(pathMetrics.getListenerCount(), is(2));
+        subscriptions.get(0).onMessage(new SubscriptionMessage());
+        assertThat(first.getMessages().size(), is(1));
+        assertThat(second.getMessages().size(), is(2));
+        assertThat(third.getMessages().size(), is(1));
+
+        // Events are counted once, not once per listener
+        assertThat(pathMetrics.getEventCount(), is(2L));
+    }
+
+    @Test
+    public void verifyResubscribeAfterConnectionLost() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        String path = this.registry.subscribe(Vantiq.SystemResources.TOPICS, TOPIC, null, listener).getPath();
+        SubscriptionCallback original = this.vantiq.await(1).get(0);
+        original.onConnect();
+        original.onMessage(new SubscriptionMessage());
+
+        // The gap starts when the drop is detected, not at the last event
+        Thread.sleep(50);
+        long lostAt = System.currentTimeMillis();
+        original.onFailure(new Exception("WebSocket closed"));
+
+        List<SubscriptionCallback> subscriptions = this.vantiq.await(2);
+        assertThat(subscriptions.size(), is(2));
+        assertThat(this.vantiq.getUnsubscribeAllCount(), is(1));
+
+        Thread.sleep(20);
+        subscriptions.get(1).onConnect();
+        assertThat(listener.getConnects(), is(2));
+        subscriptions.get(1).onMessage(new SubscriptionMessage());
+        assertThat(listener.getMessages().size(), is(2));
+
+        SubscriptionMetrics pathMetrics = this.metrics.subscription(path);
+        assertThat(pathMetrics.getGapCount(), is(1L));
+        assertThat(pathMetrics.getLastGapStart().getTime(), greaterThanOrEqualTo(lostAt));
+        assertThat(pathMetrics.getLastGapMillis(), greaterThanOrEqualTo(20L));
+    }
+
+    @Test
+    public void verifyUnusedPathIsDroppedOnReconnect() throws Exception {
+        RecordingListener kept = new RecordingListener();
+        RecordingListener removed = new RecordingListener();
+        this.registry.subscribe(Vantiq.SystemResources.TOPICS, TOPIC, null, kept);
+        this.registry.subscribe(Vantiq.SystemResources.TOPICS, "/other/topic", null, removed).unsubscribe();
+        List<SubscriptionCallback> subscriptions = this.vantiq.await(2);
+        subscriptions.get(0).onConnect();
+        subscriptions.get(1).onConnect();
+
+        subscriptions.get(0).onFailure(new Exception("WebSocket closed"));
+        subscriptions = this.vantiq.await(3);
+        Thread.sleep(50);
+
+        // Only the path that still has a listener is resubscribed
+        assertThat(this.vantiq.getSubscriptions().size(), is(3));
+        subscriptions.get(2).onMessage(new SubscriptionMessage());
+        assertThat(kept.getMessages().size(), is(1));
+        assertThat(removed.getMessages().size(), is(0));
+    }
+}
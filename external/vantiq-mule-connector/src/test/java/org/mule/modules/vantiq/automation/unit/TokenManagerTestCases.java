@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mule.modules.vantiq.auth.TokenManager;
+
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Unit tests of the renewal of access tokens.
+ */
+public class TokenManagerTestCases {
+
+    /**
+     * Issues opaque tokens, optionally holding each request until released
+     */
+    private static class FakeVantiq extends Vantiq {
+
+        private final AtomicInteger authentications = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch gate = null;
+        private volatile String accessToken = "opaque-token-0";
+
+        FakeVantiq() {
+            super("http://localhost");
+        }
+
+        @Override
+        public VantiqResponse authenticate(String username, String password) {
+            this.started.countDown();
+            CountDownLatch gate = this.gate;
+            if(gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            this.accessToken = "opaque-token-" + this.authentications.incrementAndGet();
+            return new VantiqResponse() {
+                @Override public boolean isSuccess() {
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public String getAccessToken() {
+            return this.accessToken;
+        }
+    }
+
+    @Test
+    public void verifyOpaqueTokenIsRefreshedOnInterval() throws Exception {
+        FakeVantiq vantiq = new FakeVantiq();
+        TokenManager manager = new TokenManager(vantiq, "user", "password", 20, 60000);
+        manager.start();
+        try {
+            Thread.sleep(200);
+            assertThat(vantiq.authentications.get(), greaterThanOrEqualTo(2));
+            assertThat(manager.isExpired(), is(false));
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void verifyCloseDoesNotWaitForRefresh() throws Exception {
+        FakeVantiq vantiq = new FakeVantiq();
+        CountDownLatch gate = new CountDownLatch(1);
+        vantiq.gate = gate;
+        final TokenManager manager = new TokenManager(vantiq, "user", "password", 1, 60000);
+        manager.start();
+        vantiq.started.await(10, TimeUnit.SECONDS);
+
+        // The refresh is now waiting for Vantiq
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                manager.close();
+            }
+        });
+        closer.start();
+        closer.join(1000);
+        assertThat(closer.isAlive(), is(false));
+
+        gate.countDown();
+        Thread.sleep(50);
+        assertThat(vantiq.authentications.get(), is(1));
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2016 Vantiq, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.mule.modules.vantiq.automation.unit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.modules.vantiq.metadata.RecordValidator;
+import org.mule.modules.vantiq.metadata.TypeMetadataCache;
+import org.mule.modules.vantiq.metrics.ConnectorMetrics;
+import org.mule.modules.vantiq.subscription.SubscriptionRegistry;
+
+import com.google.gson.JsonObject;
+
+import io.vantiq.client.SubscriptionCallback;
+import io.vantiq.client.SubscriptionMessage;
+import io.vantiq.client.Vantiq;
+import io.vantiq.client.VantiqResponse;
+
+/**
+ * Unit tests of the expiry, eviction, invalidation and load sharing of the
+ * data type metadata cache.
+ */
+public class TypeMetadataCacheTestCases {
+
+    /**
+     * Serves data type schemas and records the requests and subscriptions made
+     */
+    private static class FakeVantiq extends Vantiq {
+
+        private final Map<String,Integer> loads = new HashMap<String,Integer>();
+        private final Map<TypeOperation,SubscriptionCallback> subscriptions = new HashMap<TypeOperation,SubscriptionCallback>();
+        private volatile CountDownLatch gate = null;
+
+        FakeVantiq() {
+            super("http://localhost");
+        }
+
+        /**
+         * Makes schema requests wait until the returned latch is released
+         */
+        CountDownLatch hold() {
+            this.gate = new CountDownLatch(1);
+            return this.gate;
+        }
+
+        synchronized int getLoadCount(String typeName) {
+            Integer count = this.loads.get(typeName);
+            return (count != null) ? count : 0;
+        }
+
+        synchronized SubscriptionCallback getSubscription(TypeOperation op) {
+            return this.subscriptions.get(op);
+        }
+
+        @Override
+        public VantiqResponse selectOne(String resource, String id) {
+            synchronized(this) {
+                this.loads.put(id, getLoadCount(id) + 1);
+            }
+            CountDownLatch gate = this.gate;
+            if(gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            final JsonObject type = new JsonObject();
+            type.addProperty("name", id);
+            type.addProperty("ars_version", 1);
+            JsonObject value = new JsonObject();
+            value.addProperty("type", "Integer");
+            JsonObject properties = new JsonObject();
+            properties.add("value", value);
+            type.add("properties", properties);
+            return new VantiqResponse() {
+                @Override public boolean isSuccess() {
+                    return true;
+                }
+
+                @Override public Object getBody() {
+                    return type;
+                }
+            };
+        }
+
+        @Override
+        public synchronized void subscribe(String resource, String id, TypeOperation op, SubscriptionCallback callback) {
+            this.subscriptions.put(op, callback);
+        }
+    }
+
+    private FakeVantiq vantiq;
+    private ConnectorMetrics metrics;
+    private SubscriptionRegistry registry;
+    private TypeMetadataCache cache;
+
+    @Before
+    public void setUp() {
+        this.vantiq = new FakeVantiq();
+        this.metrics = ConnectorMetrics.acquire("http://localhost", "metadata-test", false);
+        this.registry = new SubscriptionRegistry(this.vantiq, this.metrics, 1000, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        if(this.cache != null) {
+            this.cache.close();
+        }
+        this.registry.close();
+        this.metrics.release();
+    }
+
+    private static SubscriptionMessage typeChanged(String name) {
+        final Map<String,Object> value = new HashMap<String,Object>();
+        value.put("name", name);
+        final Map<String,Object> body = new HashMap<String,Object>();
+        body.put("value", value);
+        return new SubscriptionMessage() {
+            @Override public Object getBody() {
+                return body;
+            }
+        };
+    }
+
+    @Test
+    public void verifyConcurrentMissesShareOneLoad() throws Exception {
+        this.cache = new TypeMetadataCache(this.vantiq, this.registry, 0, 10, false);
+        CountDownLatch gate = this.vantiq.hold();
+
+        final List<RecordValidator> validators = new ArrayList<RecordValidator>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    RecordValidator validator = cache.getValidator("Shared");
+                    synchronized(validators) {
+                        validators.add(validator);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        Thread.sleep(200);
+        gate.countDown();
+        for(Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertThat(this.vantiq.getLoadCount("Shared"), is(1));
+        assertThat(validators.size(), is(8));
+        for(RecordValidator validator : validators) {
+            assertThat(validator == validators.get(0), is(true));
+        }
+    }
+
+    @Test
+    public void verifyExpiredEntryIsReloaded() throws Exception {
+        this.cache = new TypeMetadataCache(this.vantiq, this.registry, 50, 10, false);
+        this.cache.getValidator("Expiring");
+        this.cache.getValidator("Expiring");
+        assertThat(this.vantiq.getLoadCount("Expiring"), is(1));
+
+        Thread.sleep(100);
+        this.cache.getValidator("Expiring");
+        assertThat(this.vantiq.getLoadCount("Expiring"), is(2));
+    }
+
+    @Test
+    public void verifyLeastRecentlyUsedIsEvicted() throws Exception {
+        this.cache = new TypeMetadataCache(this.vantiq, this.registry, 0, 2, false);
+        this.cache.getValidator("A");
+        this.cache.getValidator("B");
+        this.cache.getValidator("A");
+
+        // B is the least recently used when C is added
+        this.cache.getValidator("C");
+        this.cache.getValidator("A");
+        assertThat(this.vantiq.getLoadCount("A"), is(1));
+        this.cache.getValidator("B");
+        assertThat(this.vantiq.getLoadCount("B"), is(2));
+    }
+
+    @Test
+    public void verifyTypeChangeEvictsType() throws Exception {
+        this.cache = new TypeMetadataCache(this.vantiq, this.registry, 0, 10, true);
+        this.cache.getValidator("Changed");
+        this.cache.getValidator("Unchanged");
+
+        this.vantiq.getSubscription(Vantiq.TypeOperation.UPDATE).onMessage(typeChanged("Changed"));
+        this.cache.getValidator("Changed");
+        this.cache.getValidator("Unchanged");
+        assertThat(this.vantiq.getLoadCount("Changed"), is(2));
+        assertThat(this.vantiq.getLoadCount("Unchanged"), is(1));
+
+        this.vantiq.getSubscription(Vantiq.TypeOperation.DELETE).onMessage(typeChanged("Unchanged"));
+        this.cache.getValidator("Changed");
+        this.cache.getValidator("Unchanged");
+        assertThat(this.vantiq.getLoadCount("Changed"), is(2));
+        assertThat(this.vantiq.getLoadCount("Unchanged"), is(2));
+    }
+}